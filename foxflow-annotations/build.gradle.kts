@@ -33,6 +33,10 @@ java {
     }
 }
 
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.addAll(listOf("-Xlint:all,-processing", "-Werror"))
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
@@ -7,10 +7,19 @@ import bot.den.foxflow.validator.InterfaceValidator;
 import bot.den.foxflow.validator.RecordValidator;
 import bot.den.foxflow.validator.Validator;
 import com.palantir.javapoet.*;
+import edu.wpi.first.networktables.IntegerPublisher;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.StringPublisher;
 import edu.wpi.first.networktables.StringTopic;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.IntegerArrayLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.util.datalog.StructLogEntry;
+import edu.wpi.first.util.struct.Struct;
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DSControlWord;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.event.EventLoop;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
@@ -19,7 +28,10 @@ import edu.wpi.first.wpilibj2.command.button.Trigger;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.*;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 
@@ -80,14 +92,104 @@ public class StateMachineGenerator {
         generateStateMachineClass(internalStateManager);
     }
 
+    private boolean isLinearRecord() {
+        return validator instanceof RecordValidator rv && rv.isLinear();
+    }
+
+    /**
+     * The user is never allowed to pick a RobotState to transition to, which the method signatures normally enforce. For
+     * methods taking our data class directly on a linear record we can only check at runtime.
+     */
+    private CodeBlock rejectRobotState() {
+        if (!(validator instanceof RecordValidator rv) || !rv.isLinear() || !rv.robotStatePresent) {
+            return CodeBlock.of("");
+        }
+
+        return CodeBlock
+                .builder()
+                .beginControlFlow("if($T.get$L(state) != null)", stateDataName, Util.ucfirst(rv.fieldNameMap.get(robotStateName)))
+                .addStatement("throw new $T(\"Transitions to a specific RobotState are not allowed\")", IllegalArgumentException.class)
+                .endControlFlow()
+                .build();
+    }
+
+    private MethodSpec guardRateMethod() {
+        return MethodSpec
+                .methodBuilder("setGuardRate")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "guard")
+                .addParameter(GuardRate.class, "rate")
+                .addStatement("$T.this.setGuardRate(guard, rate)", stateMachineClassName)
+                .build();
+    }
+
+    private MethodSpec guardFilterMethod(String name) {
+        return MethodSpec
+                .methodBuilder(name)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "guard")
+                .addParameter(Duration.class, "duration")
+                .addStatement("$T.this.$L(guard, duration)", stateMachineClassName, name)
+                .build();
+    }
+
+    private MethodSpec edgeGuardMethod() {
+        return MethodSpec
+                .methodBuilder("edgeGuard")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(BooleanSupplier.class, "supplier")
+                .addParameter(boolean.class, "rising")
+                .returns(BooleanSupplier.class)
+                .addStatement("return $T.this.edgeGuard(supplier, rising)", stateMachineClassName)
+                .build();
+    }
+
+    private MethodSpec guardPriorityMethod() {
+        return MethodSpec
+                .methodBuilder("setGuardPriority")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "guard")
+                .addParameter(int.class, "priority")
+                .addStatement("$T.this.setGuardPriority(guard, priority)", stateMachineClassName)
+                .build();
+    }
+
+    private MethodSpec timeoutMethod() {
+        return MethodSpec
+                .methodBuilder("timeout")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "state")
+                .addParameter(Duration.class, "delay")
+                .returns(BooleanSupplier.class)
+                .addStatement("return $T.this.createTimeout(state, delay)", stateMachineClassName)
+                .build();
+    }
+
+    private MethodSpec stateCallbackMethod(String name, boolean enter) {
+        return MethodSpec
+                .methodBuilder(name)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "state")
+                .addParameter(Runnable.class, "action")
+                .addStatement("$T.this.addStateCallback(state, action, $L)", stateMachineClassName, enter)
+                .build();
+    }
+
     private TypeSpec createInternalStateManager() {
+        if (validator instanceof EnumValidator) {
+            return createEnumInternalStateManager();
+        }
+
         MethodSpec whenMethod = MethodSpec
                 .methodBuilder("transitionWhen")
                 .addModifiers(Modifier.PUBLIC)
                 .addParameter(stateDataName, "fromState")
                 .addParameter(stateDataName, "toState")
                 .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .returns(int.class)
                 .addCode("""
+                                fromState = $1T.this.intern(fromState);
+                                toState = $1T.this.intern(toState);
                                 $1T.this.verifyFromStateEnabled(fromState);
                                 
                                 if(!$1T.this.transitionWhenMap.containsKey(fromState)) {
@@ -100,17 +202,62 @@ public class StateMachineGenerator {
                                     fromStateMap.put(toState, new $3T<>());
                                 }
                                 
-                                fromStateMap.get(toState).add(booleanSupplier);
+                                int guardId = $1T.this.guardCount++;
+                                $1T.this.guardSuppliers.add(booleanSupplier);
+                                $1T.this.trackAsyncGuard(guardId, booleanSupplier);
+                                fromStateMap.get(toState).add(guardId);
                                 
+                                $1T.this.transitionCaches.clear();
                                 if($1T.this.currentSubData.contains(fromState)) {
                                     $1T.this.regenerateTransitionWhenCache();
                                 }
+                                
+                                return guardId;
                                 """,
                         stateMachineClassName,
                         HashMap.class,
                         ArrayList.class)
                 .build();
 
+        MethodSpec onMethod = MethodSpec
+                .methodBuilder("transitionOn")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "fromState")
+                .addParameter(stateDataName, "toState")
+                .addParameter(Object.class, "event")
+                .addCode("""
+                                fromState = $1T.this.intern(fromState);
+                                toState = $1T.this.intern(toState);
+                                $1T.this.verifyFromStateEnabled(fromState);
+                                $1T.this.registerEvent(event);
+                                
+                                if(!$1T.this.eventTransitions.containsKey(event)) {
+                                    $1T.this.eventTransitions.put(event, new $2T<>());
+                                }
+                                
+                                var eventMap = $1T.this.eventTransitions.get(event);
+                                var existing = eventMap.get(fromState);
+                                if(existing != null) {
+                                    if(existing.b() != toState) {
+                                        throw new $3T(fromState + " already transitions to " + existing.b() + " on " + event);
+                                    }
+                                
+                                    return;
+                                }
+                                
+                                eventMap.put(fromState, new $4T(fromState, toState));
+                                
+                                $1T.this.transitionCaches.clear();
+                                if($1T.this.currentSubData.contains(fromState)) {
+                                    $1T.this.regenerateEventCache();
+                                }
+                                """,
+                        stateMachineClassName,
+                        IdentityHashMap.class,
+                        IllegalArgumentException.class,
+                        validator.pairClassName())
+                .build();
+
         MethodSpec runMethod = MethodSpec
                 .methodBuilder("run")
                 .addModifiers(Modifier.PUBLIC)
@@ -118,6 +265,8 @@ public class StateMachineGenerator {
                 .addParameter(stateDataName, "toState")
                 .addParameter(Command.class, "command")
                 .addCode("""
+                                fromState = $1T.this.intern(fromState);
+                                toState = $1T.this.intern(toState);
                                 $1T.this.verifyFromStateEnabled(fromState);
                                 $1T.this.verifyToStateEnabled(toState);
                                 
@@ -132,6 +281,7 @@ public class StateMachineGenerator {
                                 
                                 fromStateMap.get(toState).add(command);
                                 
+                                $1T.this.transitionCaches.clear();
                                 if($1T.this.currentSubData.contains(fromState)) {
                                     $1T.this.regenerateCommandCache();
                                 }
@@ -147,6 +297,8 @@ public class StateMachineGenerator {
                 .addParameter(stateDataName, "fromState")
                 .addParameter(stateDataName, "toState")
                 .addCode("""
+                                fromState = $1T.this.intern(fromState);
+                                toState = $1T.this.intern(toState);
                                 $1T.this.verifyFromStateEnabled(fromState);
                                 $1T.this.verifyToStateEnabled(toState);
                                 
@@ -156,6 +308,7 @@ public class StateMachineGenerator {
                                 
                                 $1T.this.failLoudlyMap.get(fromState).add(toState);
                                 
+                                $1T.this.transitionCaches.clear();
                                 if($1T.this.currentSubData.contains(fromState)) {
                                     $1T.this.regenerateFailLoudlyCache();
                                 }
@@ -171,14 +324,156 @@ public class StateMachineGenerator {
                 .addParameter(EventLoop.class, "eventLoop")
                 .addParameter(stateDataName, "state")
                 .addCode("""
-                                $1T.this.verifyFromStateEnabled(state);
+                                var canonicalState = $1T.this.intern(state);
+                                $1T.this.verifyFromStateEnabled(canonicalState);
+                                
+                                if(! $1T.this.triggerMap.containsKey(canonicalState)) {
+                                    int slot = $1T.this.watchState(canonicalState);
+                                    var trigger = new Trigger(eventLoop, () -> $1T.this.watchedActive[slot]);
+                                    triggerMap.put(canonicalState, trigger);
+                                }
+                                
+                                return triggerMap.get(canonicalState);
+                                """,
+                        stateMachineClassName
+                )
+                .build();
+
+        return TypeSpec
+                .classBuilder(stateManagerClassName)
+                .addMethod(whenMethod)
+                .addMethod(guardRateMethod())
+                .addMethod(onMethod)
+                .addMethod(runMethod)
+                .addMethod(failLoudlyMethod)
+                .addMethod(triggerMethod)
+                .addMethod(stateCallbackMethod("onEnter", true))
+                .addMethod(stateCallbackMethod("onExit", false))
+                .addMethod(timeoutMethod())
+                .addMethod(edgeGuardMethod())
+                .addMethod(guardPriorityMethod())
+                .addMethod(guardFilterMethod("setGuardDebounce"))
+                .addMethod(guardFilterMethod("setGuardMinimumDwell"))
+                .build();
+    }
+
+    /**
+     * Enum state machines index everything by ordinal, so registering a transition is just a matter of growing the
+     * right slot in the flat tables the state machine class holds.
+     */
+    private TypeSpec createEnumInternalStateManager() {
+        MethodSpec whenMethod = MethodSpec
+                .methodBuilder("transitionWhen")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "fromState")
+                .addParameter(stateDataName, "toState")
+                .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .returns(int.class)
+                .addCode("""
+                                int from = fromState.ordinal();
+                                
+                                var guards = $1T.this.transitionWhenGuards[from];
+                                guards = $2T.copyOf(guards, guards.length + 1);
+                                guards[guards.length - 1] = booleanSupplier;
+                                $1T.this.transitionWhenGuards[from] = guards;
+                                
+                                var targets = $1T.this.transitionWhenTargets[from];
+                                targets = $2T.copyOf(targets, targets.length + 1);
+                                targets[targets.length - 1] = toState.ordinal();
+                                $1T.this.transitionWhenTargets[from] = targets;
+                                
+                                int guardId = $1T.this.guardCount++;
+                                $1T.this.trackAsyncGuard(guardId, booleanSupplier);
+                                var guardIds = $1T.this.transitionWhenGuardIds[from];
+                                guardIds = $2T.copyOf(guardIds, guardIds.length + 1);
+                                guardIds[guardIds.length - 1] = guardId;
+                                $1T.this.transitionWhenGuardIds[from] = guardIds;
+                                
+                                $1T.this.sortGuardsByPriority(from);
+                                return guardId;
+                                """,
+                        stateMachineClassName,
+                        Arrays.class)
+                .build();
+
+        MethodSpec onMethod = MethodSpec
+                .methodBuilder("transitionOn")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "fromState")
+                .addParameter(stateDataName, "toState")
+                .addParameter(Object.class, "event")
+                .addCode("""
+                                $1T.this.registerEvent(event);
+                                
+                                var targets = $1T.this.eventTargets.get(event);
+                                if(targets == null) {
+                                    targets = new int[STATES.length];
+                                    $2T.fill(targets, -1);
+                                    $1T.this.eventTargets.put(event, targets);
+                                }
+                                
+                                int from = fromState.ordinal();
+                                if(targets[from] != -1 && targets[from] != toState.ordinal()) {
+                                    throw new $3T(fromState + " already transitions to " + STATES[targets[from]] + " on " + event);
+                                }
+                                
+                                targets[from] = toState.ordinal();
+                                """,
+                        stateMachineClassName,
+                        Arrays.class,
+                        IllegalArgumentException.class)
+                .build();
+
+        MethodSpec runMethod = MethodSpec
+                .methodBuilder("run")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "fromState")
+                .addParameter(stateDataName, "toState")
+                .addParameter(Command.class, "command")
+                .addCode("""
+                                int edge = $1T.edgeIndex(fromState, toState);
+                                
+                                var commands = $1T.this.transitionCommands[edge];
+                                if(commands == null) {
+                                    commands = new $2T[] { command };
+                                } else {
+                                    commands = $3T.copyOf(commands, commands.length + 1);
+                                    commands[commands.length - 1] = command;
+                                }
+                                
+                                $1T.this.transitionCommands[edge] = commands;
+                                """,
+                        stateMachineClassName,
+                        Command.class,
+                        Arrays.class)
+                .build();
+
+        MethodSpec failLoudlyMethod = MethodSpec
+                .methodBuilder("failLoudly")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(stateDataName, "fromState")
+                .addParameter(stateDataName, "toState")
+                .addCode("""
+                                int edge = $1T.edgeIndex(fromState, toState);
+                                $1T.this.failLoudlyEdges[edge >>> 6] |= 1L << edge;
+                                """,
+                        stateMachineClassName)
+                .build();
+
+        MethodSpec triggerMethod = MethodSpec
+                .methodBuilder("trigger")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Trigger.class)
+                .addParameter(EventLoop.class, "eventLoop")
+                .addParameter(stateDataName, "state")
+                .addCode("""
+                                int index = state.ordinal();
                                 
-                                if(! $1T.this.triggerMap.containsKey(state)) {
-                                    var trigger = new Trigger(eventLoop, () -> $1T.this.currentSubData.contains(state));
-                                    triggerMap.put(state, trigger);
+                                if($1T.this.triggers[index] == null) {
+                                    $1T.this.triggers[index] = new Trigger(eventLoop, () -> $1T.this.currentState == state);
                                 }
                                 
-                                return triggerMap.get(state);
+                                return $1T.this.triggers[index];
                                 """,
                         stateMachineClassName
                 )
@@ -187,9 +482,18 @@ public class StateMachineGenerator {
         return TypeSpec
                 .classBuilder(stateManagerClassName)
                 .addMethod(whenMethod)
+                .addMethod(guardRateMethod())
+                .addMethod(onMethod)
                 .addMethod(runMethod)
                 .addMethod(failLoudlyMethod)
                 .addMethod(triggerMethod)
+                .addMethod(stateCallbackMethod("onEnter", true))
+                .addMethod(stateCallbackMethod("onExit", false))
+                .addMethod(timeoutMethod())
+                .addMethod(edgeGuardMethod())
+                .addMethod(guardPriorityMethod())
+                .addMethod(guardFilterMethod("setGuardDebounce"))
+                .addMethod(guardFilterMethod("setGuardMinimumDwell"))
                 .build();
     }
 
@@ -254,6 +558,15 @@ public class StateMachineGenerator {
         this.environment.writeType(type);
     }
 
+    private CodeBlock lastGuardCheck(String method) {
+        return CodeBlock
+                .builder()
+                .beginControlFlow("if(this.lastGuard < 0)")
+                .addStatement("throw new $T(\"$L needs to follow a transitionWhen\")", IllegalStateException.class, method)
+                .endControlFlow()
+                .build();
+    }
+
     private void generateToClass() {
         MethodSpec constructor = MethodSpec
                 .constructorBuilder()
@@ -264,12 +577,81 @@ public class StateMachineGenerator {
                 .addStatement("super(manager, fromState, toState)")
                 .build();
 
+        FieldSpec lastGuardField = FieldSpec
+                .builder(int.class, "lastGuard")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("-1")
+                .build();
+
         MethodSpec whenMethod = MethodSpec
                 .methodBuilder("transitionWhen")
                 .addModifiers(Modifier.PUBLIC)
                 .addParameter(BooleanSupplier.class, "booleanSupplier")
                 .returns(stateToClassName)
-                .addStatement("this.manager.transitionWhen(this.fromState, this.toState, booleanSupplier)")
+                .addStatement("this.lastGuard = this.manager.transitionWhen(this.fromState, this.toState, booleanSupplier)")
+                .addStatement("return this")
+                .build();
+
+        MethodSpec whenRateMethod = MethodSpec
+                .methodBuilder("transitionWhen")
+                .addJavadoc("Like {@link #transitionWhen(BooleanSupplier)}, but the supplier is only evaluated as often as the rate\n")
+                .addJavadoc("allows. See {@link $T}.\n", GuardRate.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .addParameter(GuardRate.class, "rate")
+                .returns(stateToClassName)
+                .addStatement("this.lastGuard = this.manager.transitionWhen(this.fromState, this.toState, booleanSupplier)")
+                .addStatement("this.manager.setGuardRate(this.lastGuard, rate)")
+                .addStatement("return this")
+                .build();
+
+        MethodSpec priorityMethod = MethodSpec
+                .methodBuilder("priority")
+                .addJavadoc("Sets the priority of the guard registered last. Guards are checked from the highest priority down, and\n")
+                .addJavadoc("once one fires no lower priority guard is evaluated. Guards default to a priority of 0, and guards\n")
+                .addJavadoc("with the same priority are resolved together, as if priorities weren't used.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "priority")
+                .returns(stateToClassName)
+                .addCode(lastGuardCheck("priority"))
+                .addStatement("this.manager.setGuardPriority(this.lastGuard, priority)")
+                .addStatement("return this")
+                .build();
+
+        MethodSpec debounceMethod = MethodSpec
+                .methodBuilder("debounce")
+                .addJavadoc("The guard registered last must read true for {@code duration} in a row before the transition happens.\n")
+                .addJavadoc("A single false reading starts the count over.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Duration.class, "duration")
+                .returns(stateToClassName)
+                .addCode(lastGuardCheck("debounce"))
+                .addStatement("this.manager.setGuardDebounce(this.lastGuard, duration)")
+                .addStatement("return this")
+                .build();
+
+        MethodSpec minimumDwellMethod = MethodSpec
+                .methodBuilder("minimumDwell")
+                .addJavadoc("The guard registered last can't fire until the state machine has stayed in its current state for at\n")
+                .addJavadoc("least {@code duration}, which keeps a flapping guard from bouncing the state machine back and forth.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Duration.class, "duration")
+                .returns(stateToClassName)
+                .addCode(lastGuardCheck("minimumDwell"))
+                .addStatement("this.manager.setGuardMinimumDwell(this.lastGuard, duration)")
+                .addStatement("return this")
+                .build();
+
+        MethodSpec onMethod = MethodSpec
+                .methodBuilder("transitionOn")
+                .addJavadoc("Transitions when {@code event} is passed to the state machine's {@code fire} method while in the from\n")
+                .addJavadoc("state. Any object can be an event, enums work well. Each from state can only go to one state for an\n")
+                .addJavadoc("event, registering a different one throws an {@link $T}.\n", IllegalArgumentException.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Object.class, "event")
+                .returns(stateToClassName)
+                .addStatement("this.manager.transitionOn(this.fromState, this.toState, event)")
+                .addStatement("this.lastGuard = -1")
                 .addStatement("return this")
                 .build();
 
@@ -280,13 +662,75 @@ public class StateMachineGenerator {
                 .addStatement("return transitionWhen(() -> true)")
                 .build();
 
+        MethodSpec onRiseMethod = MethodSpec
+                .methodBuilder("transitionOnRise")
+                .addJavadoc("Transitions on the poll where the supplier goes from false to true. The supplier is sampled on every\n")
+                .addJavadoc("poll, even while the from state isn't active, so an edge is never missed or seen twice.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .returns(stateToClassName)
+                .addStatement("return transitionWhen(this.manager.edgeGuard(booleanSupplier, true))")
+                .build();
+
+        MethodSpec onFallMethod = MethodSpec
+                .methodBuilder("transitionOnFall")
+                .addJavadoc("Transitions on the poll where the supplier goes from true to false. The supplier is sampled on every\n")
+                .addJavadoc("poll, even while the from state isn't active, so an edge is never missed or seen twice.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .returns(stateToClassName)
+                .addStatement("return transitionWhen(this.manager.edgeGuard(booleanSupplier, false))")
+                .build();
+
+        MethodSpec afterMethod = MethodSpec
+                .methodBuilder("transitionAfter")
+                .addJavadoc("Transitions once the state machine has been in the from state for {@code delay}. The countdown starts\n")
+                .addJavadoc("over every time the from state is entered.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Duration.class, "delay")
+                .returns(stateToClassName)
+                .addStatement("return transitionWhen(this.manager.timeout(this.fromState, delay))")
+                .build();
+
+        MethodSpec whenAsyncMethod = MethodSpec
+                .methodBuilder("transitionWhenAsync")
+                .addJavadoc("Like {@link #transitionWhen}, but the supplier runs on a background thread and polling only reads its\n")
+                .addJavadoc("last result. See {@link $T}.\n", AsyncGuard.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .returns(stateToClassName)
+                .addStatement("return transitionWhen(new $T(booleanSupplier))", AsyncGuard.class)
+                .build();
+
+        MethodSpec whenAsyncMaxAgeMethod = MethodSpec
+                .methodBuilder("transitionWhenAsync")
+                .addJavadoc("Like {@link #transitionWhen}, but the supplier runs on a background thread and polling only reads its\n")
+                .addJavadoc("last result. Results older than {@code maxAge} are treated as false. See {@link $T}.\n", AsyncGuard.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(BooleanSupplier.class, "booleanSupplier")
+                .addParameter(Duration.class, "maxAge")
+                .returns(stateToClassName)
+                .addStatement("return transitionWhen(new $T(booleanSupplier, maxAge))", AsyncGuard.class)
+                .build();
+
         TypeSpec type = TypeSpec
                 .classBuilder(stateToClassName)
                 .addModifiers(Modifier.PUBLIC)
                 .superclass(stateLimitedToClassName)
+                .addField(lastGuardField)
                 .addMethod(constructor)
                 .addMethod(whenMethod)
+                .addMethod(whenRateMethod)
+                .addMethod(priorityMethod)
+                .addMethod(debounceMethod)
+                .addMethod(minimumDwellMethod)
+                .addMethod(onMethod)
                 .addMethod(alwaysMethod)
+                .addMethod(onRiseMethod)
+                .addMethod(onFallMethod)
+                .addMethod(afterMethod)
+                .addMethod(whenAsyncMethod)
+                .addMethod(whenAsyncMaxAgeMethod)
                 .build();
 
         this.environment.writeType(type);
@@ -355,11 +799,13 @@ public class StateMachineGenerator {
 
             @Override
             public MethodSpec acceptWrapperDataType() {
+                // Linear records rely on this overload for any combination of fields without its own method
                 return MethodSpec
                         .methodBuilder("to")
-                        .addModifiers(Modifier.PRIVATE)
+                        .addModifiers(isLinearRecord() ? Modifier.PUBLIC : Modifier.PRIVATE)
                         .returns(stateToClassName)
                         .addParameter(validator.wrappedClassName(), "state")
+                        .addCode(rejectRobotState())
                         .addStatement("return new $T(this.manager, this.targetState, state)", stateToClassName)
                         .build();
             }
@@ -393,6 +839,26 @@ public class StateMachineGenerator {
                 .addStatement("return manager.trigger(eventLoop, targetState)")
                 .build();
 
+        MethodSpec onEnterMethod = MethodSpec
+                .methodBuilder("onEnter")
+                .addJavadoc("Runs the action straight from the state machine every time it enters this state.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(stateFromClassName)
+                .addParameter(Runnable.class, "action")
+                .addStatement("manager.onEnter(targetState, action)")
+                .addStatement("return this")
+                .build();
+
+        MethodSpec onExitMethod = MethodSpec
+                .methodBuilder("onExit")
+                .addJavadoc("Runs the action straight from the state machine every time it leaves this state.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(stateFromClassName)
+                .addParameter(Runnable.class, "action")
+                .addStatement("manager.onExit(targetState, action)")
+                .addStatement("return this")
+                .build();
+
         TypeSpec.Builder typeBuilder = TypeSpec
                 .classBuilder(stateFromClassName)
                 .addModifiers(Modifier.PUBLIC)
@@ -406,6 +872,8 @@ public class StateMachineGenerator {
         TypeSpec type = typeBuilder
                 .addMethod(triggerDefaultMethod)
                 .addMethod(triggerEventLoopMethod)
+                .addMethod(onEnterMethod)
+                .addMethod(onExitMethod)
                 .build();
 
         this.environment.writeType(type);
@@ -418,21 +886,18 @@ public class StateMachineGenerator {
                 .initializer("new $T()", stateManagerClassName)
                 .build();
 
-        FieldSpec networkTableInstance = FieldSpec
-                .builder(NetworkTableInstance.class, "networkTableInstance")
-                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .initializer("$T.getDefault()", NetworkTableInstance.class)
-                .build();
+        var metricsType = ParameterizedTypeName.get(ClassName.get(StateMachineMetrics.class), validator.originalTypeName());
 
-        FieldSpec currentStateTopic = FieldSpec
-                .builder(StringPublisher.class, "currentStateTopic")
-                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .initializer("networkTableInstance.getStringTopic(\"StateMachine/currentState\").publish()")
+        // Null until enableMetrics is called, so a state machine without metrics only pays for the null checks
+        FieldSpec metricsField = FieldSpec
+                .builder(metricsType, "metrics")
+                .addModifiers(Modifier.PRIVATE)
                 .build();
 
+        // States are immutable, so publishing the reference is all it takes for other threads to read it safely
         FieldSpec currentStateField = FieldSpec
                 .builder(validator.originalTypeName(), "currentState")
-                .addModifiers(Modifier.PRIVATE)
+                .addModifiers(Modifier.PRIVATE, Modifier.VOLATILE)
                 .build();
 
         var subDataSetType = ParameterizedTypeName.get(ClassName.get(Set.class), stateDataName);
@@ -450,29 +915,115 @@ public class StateMachineGenerator {
                         stateDataName,
                         ParameterizedTypeName.get(
                                 List.class,
-                                BooleanSupplier.class
+                                Integer.class
                         )
                 )
         );
         FieldSpec transitionWhenMap = FieldSpec
                 .builder(transitionWhenMapType, "transitionWhenMap")
                 .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .initializer("new $T()", HashMap.class)
+                .initializer("new $T<>()", IdentityHashMap.class)
                 .build();
 
-        var transitionWhenCacheType = ParameterizedTypeName.get(
-                ClassName.get(Map.class),
-                ClassName.get(BooleanSupplier.class),
-                ParameterizedTypeName.get(
-                        ClassName.get(List.class),
-                        validator.pairClassName()
-                )
+        // The cache is kept as parallel arrays so polling can walk it by index without creating an iterator
+        FieldSpec transitionWhenSuppliers = FieldSpec
+                .builder(BooleanSupplier[].class, "transitionWhenSuppliers")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T[0]", BooleanSupplier.class)
+                .build();
+
+        FieldSpec transitionWhenOptions = FieldSpec
+                .builder(ArrayTypeName.of(ArrayTypeName.of(validator.pairClassName())), "transitionWhenOptions")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T[0][]", validator.pairClassName())
+                .build();
+
+        // The from state slot of every option above, see regenerateTransitionWhenCache
+        FieldSpec transitionWhenOptionSlots = FieldSpec
+                .builder(int[][].class, "transitionWhenOptionSlots")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new int[0][]")
+                .build();
+
+        var fromSlotsType = ParameterizedTypeName.get(ClassName.get(Map.class), stateDataName, ClassName.get(Integer.class));
+        FieldSpec fromSlots = FieldSpec
+                .builder(fromSlotsType, "fromSlots")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T<>()", HashMap.class)
+                .build();
+
+        // For every slot, a bitset of the slots holding a more specific version of the same from state
+        FieldSpec slotShadows = FieldSpec
+                .builder(long[][].class, "slotShadows")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new long[0][]")
+                .build();
+
+        FieldSpec transitionWhenGuardIds = FieldSpec
+                .builder(int[].class, "transitionWhenGuardIds")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new int[0]")
+                .build();
+
+        // Every transitionWhen registration gets its own id, in the order they were registered, even if a supplier is
+        // reused. This is the index of the supplier here, and what the guard filters and priorities are kept by.
+        FieldSpec guardSuppliers = FieldSpec
+                .builder(ParameterizedTypeName.get(List.class, BooleanSupplier.class), "guardSuppliers")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", ArrayList.class)
+                .build();
+
+        var pairListType = ParameterizedTypeName.get(
+                ClassName.get(List.class),
+                validator.pairClassName()
         );
 
-        FieldSpec transitionWhenCache = FieldSpec
-                .builder(transitionWhenCacheType, "transitionWhenCache")
+        // Scratch space for getNextState, reused on every poll so a steady state machine does not create garbage
+        FieldSpec possibleOptions = FieldSpec
+                .builder(pairListType, "possibleOptions")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", ArrayList.class)
+                .build();
+
+        // The guard id each possible option came from, or -1 if it came from an event
+        FieldSpec possibleOptionSources = FieldSpec
+                .builder(int[].class, "possibleOptionSources")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new int[8]")
+                .build();
+
+        // The from state slot of each possible option
+        FieldSpec possibleOptionSlots = FieldSpec
+                .builder(int[].class, "possibleOptionSlots")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new int[8]")
+                .build();
+
+        // The possible options ordered by slot, and the counting sort that puts them in that order
+        FieldSpec optionOrder = FieldSpec
+                .builder(int[].class, "optionOrder")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new int[8]")
+                .build();
+
+        FieldSpec slotStarts = FieldSpec
+                .builder(int[].class, "slotStarts")
                 .addModifiers(Modifier.PRIVATE)
-                .initializer("new $T()", HashMap.class)
+                .initializer("new int[0]")
+                .build();
+
+        // A bitset of the slots with at least one possible option
+        FieldSpec firedSlots = FieldSpec
+                .builder(long[].class, "firedSlots")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new long[0]")
+                .build();
+
+        // One slot per record field, indexed the same way as the data class field masks
+        FieldSpec mergedValues = FieldSpec
+                .builder(Object[].class, "mergedValues")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new Object[$L]", validator instanceof RecordValidator rv ? rv.fieldTypes.size() : 0)
                 .build();
 
         ParameterizedTypeName commandListType = ParameterizedTypeName.get(
@@ -500,7 +1051,7 @@ public class StateMachineGenerator {
         FieldSpec failLoudlyMap = FieldSpec
                 .builder(failLoudlyMapType, "failLoudlyMap")
                 .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .initializer("new $T()", HashMap.class)
+                .initializer("new $T<>()", IdentityHashMap.class)
                 .build();
 
         var failLoudlyCacheType = ParameterizedTypeName.get(
@@ -511,13 +1062,13 @@ public class StateMachineGenerator {
         FieldSpec failLoudlyCache = FieldSpec
                 .builder(failLoudlyCacheType, "failLoudlyCache")
                 .addModifiers(Modifier.PRIVATE)
-                .initializer("new $T()", HashSet.class)
+                .initializer("$T.newSetFromMap(new $T<>())", Collections.class, IdentityHashMap.class)
                 .build();
 
         FieldSpec transitionCommandMap = FieldSpec
                 .builder(transitionCommandMapType, "transitionCommandMap")
                 .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .initializer("new $T()", HashMap.class)
+                .initializer("new $T<>()", IdentityHashMap.class)
                 .build();
 
         var transitionCommandCacheType = ParameterizedTypeName.get(
@@ -529,7 +1080,20 @@ public class StateMachineGenerator {
         FieldSpec transitionCommandCache = FieldSpec
                 .builder(transitionCommandCacheType, "transitionCommandCache")
                 .addModifiers(Modifier.PRIVATE)
-                .initializer("new $T()", HashMap.class)
+                .initializer("new $T<>()", IdentityHashMap.class)
+                .build();
+
+        // Every command to schedule when moving from the current state to a full target state, filled in as edges are taken
+        var edgeCommandsType = ParameterizedTypeName.get(
+                ClassName.get(Map.class),
+                validator.originalTypeName(),
+                ArrayTypeName.of(Command.class)
+        );
+
+        FieldSpec edgeCommands = FieldSpec
+                .builder(edgeCommandsType, "edgeCommands")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T<>(CACHED_EDGES)", LruCache.class)
                 .build();
 
         var triggerMapType = ParameterizedTypeName.get(
@@ -541,7 +1105,7 @@ public class StateMachineGenerator {
         FieldSpec triggerMap = FieldSpec
                 .builder(triggerMapType, "triggerMap")
                 .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .initializer("new $T()", HashMap.class)
+                .initializer("new $T<>()", IdentityHashMap.class)
                 .build();
 
         final String FROM = "from";
@@ -582,15 +1146,22 @@ public class StateMachineGenerator {
                 // We disallow using a record class in the constructor publicly just in case the record has a RobotState.
                 var visibility = validator instanceof RecordValidator ? Modifier.PRIVATE : Modifier.PUBLIC;
 
-                return MethodSpec
+                MethodSpec.Builder constructorBuilder = MethodSpec
                         .constructorBuilder()
                         .addModifiers(visibility)
                         .addParameter(validator.originalTypeName(), "initialState")
-                        .addCode("""
-                                this.currentState = initialState;
-                                this.currentSubData = this.generateToSubDataStates(initialState);
-                                currentStateTopic.set(currentState.toString());
-                                """)
+                        .addStatement("this.currentState = initialState");
+
+                if (validator instanceof RecordValidator) {
+                    constructorBuilder.addStatement("this.currentSubData = this.generateToSubDataStates(initialState)");
+                    constructorBuilder.addStatement("this.currentStateId = this.stateId(initialState)");
+                } else {
+                    constructorBuilder.addStatement("this.callbackState = initialState");
+                }
+
+                return constructorBuilder
+                        .addStatement("this.name = $T.claimDefaultName($S)", StatePublishing.class, validator.originalTypeName().simpleName())
+                        .addStatement("this.configurePublishing(this.name, $T.NAME)", StatePublishing.class)
                         .build();
             }
 
@@ -629,6 +1200,7 @@ public class StateMachineGenerator {
 
         MethodSpec currentStateMethod = MethodSpec
                 .methodBuilder("currentState")
+                .addJavadoc("Safe to call from any thread.\n")
                 .addModifiers(Modifier.PUBLIC)
                 .returns(validator.originalTypeName())
                 .addStatement("return this.currentState")
@@ -679,10 +1251,10 @@ public class StateMachineGenerator {
 
             @Override
             public MethodSpec acceptWrapperDataType() {
-                // Internal use only for our wrapper method
+                // Internal use only for our wrapper method, unless linear records need it for combinations of fields
                 return MethodSpec
                         .methodBuilder("state")
-                        .addModifiers(Modifier.PRIVATE)
+                        .addModifiers(isLinearRecord() ? Modifier.PUBLIC : Modifier.PRIVATE)
                         .addParameter(validator.wrappedClassName(), "state")
                         .returns(stateFromClassName)
                         .addStatement("return new $T(this.manager, state)", stateFromClassName)
@@ -746,9 +1318,10 @@ public class StateMachineGenerator {
             public MethodSpec acceptWrapperDataType() {
                 return MethodSpec
                         .methodBuilder("transitionTo")
-                        .addModifiers(Modifier.PRIVATE)
+                        .addModifiers(isLinearRecord() ? Modifier.PUBLIC : Modifier.PRIVATE)
                         .addParameter(validator.wrappedClassName(), "state")
                         .returns(Command.class)
+                        .addCode(rejectRobotState())
                         .addCode("""
                                         return $T.runOnce(() -> updateState(state)).ignoringDisable(true);
                                         """,
@@ -767,23 +1340,110 @@ public class StateMachineGenerator {
                         Commands.class)
                 .build();
 
-        MethodSpec.Builder pollMethodBuilder = MethodSpec
+        MethodSpec pollMethod = MethodSpec
+                .methodBuilder("poll")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this.poll(this.readDriverStation())")
+                .build();
+
+        MethodSpec pollWithModeMethod = MethodSpec
                 .methodBuilder("poll")
                 .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "driverStationMode")
+                .addCode("""
+                        var metrics = this.metrics;
+                        if(metrics == null) {
+                            this.pollState(driverStationMode);
+                            return;
+                        }
+                        
+                        long start = $1T.nanoTime();
+                        try {
+                            this.pollState(driverStationMode);
+                        } finally {
+                            metrics.recordPoll($1T.nanoTime() - start);
+                        }
+                        """, System.class)
+                .build();
+
+        boolean robotStatePresent = validator instanceof RecordValidator rv && rv.robotStatePresent;
+
+        MethodSpec readsDriverStationMethod = MethodSpec
+                .methodBuilder("readsDriverStation")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return $L", robotStatePresent)
+                .build();
+
+        MethodSpec.Builder readDriverStationMethodBuilder = MethodSpec
+                .methodBuilder("readDriverStation")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class);
+
+        if (robotStatePresent) {
+            readDriverStationMethodBuilder.addCode("""
+                    this.controlWord.refresh();
+                    return $T.of(
+                            this.controlWord.isDisabled(),
+                            this.controlWord.isAutonomousEnabled(),
+                            this.controlWord.isTeleopEnabled(),
+                            this.controlWord.isTest()
+                    );
+                    """, DriverStationMode.class);
+        } else {
+            readDriverStationMethodBuilder
+                    .addComment("Nothing in this state machine follows the driver station")
+                    .addStatement("return 0");
+        }
+
+        MethodSpec readDriverStationMethod = readDriverStationMethodBuilder.build();
+
+        MethodSpec.Builder pollStateMethodBuilder = MethodSpec
+                .methodBuilder("pollState")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "driverStationMode")
+                .addCode("""
+                        if(!this.pendingActions.isEmpty()) {
+                            this.runPendingActions();
+                        }
+                        
+                        if(this.timeoutCount > 0) {
+                            $1T.shared().advance($2T.getFPGATime());
+                        }
+                        
+                        this.pollCount++;
+                        if(this.guardRecording != null) {
+                            this.guardRecording.startTick();
+                        } else if(this.guardReplay != null) {
+                            this.replayEvents();
+                        }
+                        
+                        if(this.edgeSuppliers.length > 0 && this.guardReplay == null) {
+                            this.sampleEdgeGuards();
+                        }
+                        
+                        """, TimerWheel.class, RobotController.class)
                 .addStatement("$T nextState = this.getNextState()", stateDataName);
 
         if (validator instanceof RecordValidator rv && rv.robotStatePresent) {
-            pollMethodBuilder.addCode(
+            pollStateMethodBuilder.addCode(
                     """
-                            this.controlWord.refresh();
+                            var currentState = this.currentState;
+                            int mode = driverStationMode;
+                            if(this.guardReplay != null) {
+                                mode = this.guardReplay.control();
+                            } else if(this.guardRecording != null) {
+                                this.guardRecording.control(mode);
+                            }
+                            
                             $1T nextRobotState = null;
-                            if(currentState.robotState() != RobotState.DISABLED && this.controlWord.isDisabled()) {
+                            if(currentState.robotState() != RobotState.DISABLED && (mode & $3T.DISABLED) != 0) {
                                 nextRobotState = new $2T(RobotState.DISABLED);
-                            } else if(currentState.robotState() != RobotState.AUTO && this.controlWord.isAutonomousEnabled()) {
+                            } else if(currentState.robotState() != RobotState.AUTO && (mode & $3T.AUTONOMOUS_ENABLED) != 0) {
                                 nextRobotState = new $2T(RobotState.AUTO);
-                            } else if(currentState.robotState() != RobotState.TELEOP && this.controlWord.isTeleopEnabled()) {
+                            } else if(currentState.robotState() != RobotState.TELEOP && (mode & $3T.TELEOP_ENABLED) != 0) {
                                 nextRobotState = new $2T(RobotState.TELEOP);
-                            } else if(currentState.robotState() != RobotState.TEST && this.controlWord.isTest()) {
+                            } else if(currentState.robotState() != RobotState.TEST && (mode & $3T.TEST) != 0) {
                                 nextRobotState = new $2T(RobotState.TEST);
                             }
                             
@@ -794,125 +1454,253 @@ public class StateMachineGenerator {
                             }
                             """,
                     stateDataName,
-                    rv.fieldToInnerClass.get(List.of(robotStateName)));
+                    rv.fieldToInnerClass.get(List.of(robotStateName)),
+                    DriverStationMode.class);
         }
 
-        pollMethodBuilder.addCode(
+        pollStateMethodBuilder.addCode(
                 """
                         if(nextState == null) {
+                            this.firingGuard = -1;
                             return;
                         }
                         
                         this.updateState(nextState);
                         """);
 
-        MethodSpec pollMethod = pollMethodBuilder.build();
+        MethodSpec pollStateMethod = pollStateMethodBuilder.build();
 
-        var pairList = ParameterizedTypeName.get(
-                ClassName.get(List.class),
-                validator.pairClassName()
-        );
-        var pairSet = ParameterizedTypeName.get(
-                ClassName.get(Set.class),
-                validator.pairClassName()
-        );
+        MethodSpec enableMetricsMethod = MethodSpec
+                .methodBuilder("enableMetrics")
+                .addJavadoc("Starts counting polls, guard evaluations, transitions, fail loudly trips and scheduled commands for\n")
+                .addJavadoc("this state machine. Calling this again returns the same metrics.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(metricsType)
+                .addCode("""
+                        if(this.metrics == null) {
+                            this.metrics = new $T<>();
+                        }
+                        
+                        return this.metrics;
+                        """, StateMachineMetrics.class)
+                .build();
 
         MethodSpec.Builder getNextStateMethodBuilder = MethodSpec
                 .methodBuilder("getNextState")
                 .addModifiers(Modifier.PRIVATE)
-                .returns(stateDataName)
-                .addComment("Map of our input specifiers to list of valid outputs")
+                .returns(stateDataName);
+
+        if (validator instanceof EnumValidator) {
+            getNextStateMethodBuilder
+                    .addCode("""
+                            int from = this.currentState.ordinal();
+                            var guards = this.transitionWhenGuards[from];
+                            var targets = this.transitionWhenTargets[from];
+                            
+                            var guardIds = this.transitionWhenGuardIds[from];
+                            this.firingGuard = -1;
+                            
+                            int nextState = -1;
+                            int firedPriority = 0;
+                            for(int i = 0; i < guards.length; i++) {
+                                // Guards are sorted by priority, anything after the fired ones can't win
+                                if(nextState != -1 && this.guardPriority(guardIds[i]) < firedPriority) {
+                                    this.skipGuards(guardIds, i);
+                                    break;
+                                }
+                            
+                                if(!this.evaluateGuard(guards[i], guardIds[i])) {
+                                    continue;
+                                }
+                            
+                                if(nextState == -1) {
+                                    nextState = targets[i];
+                                    this.firingGuard = guardIds[i];
+                                    firedPriority = this.guardPriority(guardIds[i]);
+                                } else {
+                                    // Two guards fired at once, so we don't pick either of them, even if they lead to the same state
+                                    this.skipGuards(guardIds, i + 1);
+                                    this.firingGuard = -1;
+                                    return null;
+                                }
+                            }
+                            
+                            return nextState == -1 ? null : STATES[nextState];
+                            """);
+        } else {
+            getNextStateMethodBuilder
+                .addComment("Collect every output whose supplier fired. Nothing here allocates once the scratch lists have grown.")
                 .addCode("""
-                                $1T possibleOptions = new $2T();
-                                for(var entry : this.transitionWhenCache.entrySet()) {
-                                    var supplier = entry.getKey();
+                                var possibleOptions = this.possibleOptions;
+                                possibleOptions.clear();
+                                this.firingGuard = -1;
+                                
+                                boolean fired = false;
+                                int firedPriority = 0;
+                                for(int i = 0; i < this.transitionWhenSuppliers.length; i++) {
+                                    // Guards are sorted by priority, anything after the fired ones can't win
+                                    if(fired && this.guardPriority(this.transitionWhenGuardIds[i]) < firedPriority) {
+                                        this.skipGuards(this.transitionWhenGuardIds, i);
+                                        break;
+                                    }
                                 
-                                    if(supplier.getAsBoolean()) {
-                                        possibleOptions.addAll(entry.getValue());
+                                    if(!this.evaluateGuard(this.transitionWhenSuppliers[i], this.transitionWhenGuardIds[i])) {
+                                        continue;
+                                    }
+                                
+                                    if(!fired) {
+                                        fired = true;
+                                        firedPriority = this.guardPriority(this.transitionWhenGuardIds[i]);
+                                    }
+                                
+                                    var options = this.transitionWhenOptions[i];
+                                    var slots = this.transitionWhenOptionSlots[i];
+                                    for(int j = 0; j < options.length; j++) {
+                                        this.addPossibleOption(options[j], this.transitionWhenGuardIds[i], slots[j]);
                                     }
                                 }
                                 
-                                if(possibleOptions.isEmpty()) {
-                                    return null;
-                                } else if(possibleOptions.size() == 1) {
-                                    return possibleOptions.get(0).$3L();
+                                return this.resolveOptions();
+                                """);
+        }
+
+        MethodSpec getNextStateMethod = getNextStateMethodBuilder.build();
+
+        MethodSpec.Builder resolveOptionsMethodBuilder = MethodSpec
+                .methodBuilder("resolveOptions")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(stateDataName);
+
+        MethodSpec addPossibleOptionMethod = MethodSpec
+                .methodBuilder("addPossibleOption")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(validator.pairClassName(), "option")
+                .addParameter(int.class, "source")
+                .addParameter(int.class, "slot")
+                .addCode("""
+                                if(this.possibleOptions.size() == this.possibleOptionSources.length) {
+                                    this.possibleOptionSources = $1T.copyOf(this.possibleOptionSources, this.possibleOptionSources.length * 2);
+                                    this.possibleOptionSlots = $1T.copyOf(this.possibleOptionSlots, this.possibleOptionSources.length);
+                                    this.optionOrder = new int[this.possibleOptionSources.length];
                                 }
+                                
+                                this.possibleOptionSources[this.possibleOptions.size()] = source;
+                                this.possibleOptionSlots[this.possibleOptions.size()] = slot;
+                                this.possibleOptions.add(option);
                                 """,
-                        pairList,
-                        ArrayList.class,
-                        validator instanceof EnumValidator ? "getSecond" : "b"
-                );
-
+                        Arrays.class)
+                .build();
 
         if (validator instanceof RecordValidator) {
-            getNextStateMethodBuilder
+            resolveOptionsMethodBuilder
                     .addCode("""
-                                    $1T finalResults = new $2T();
-                                    $4T seen = new $5T(possibleOptions);
-                                    while(!possibleOptions.isEmpty()) {
-                                        $1T mergedResults = new $2T();
+                                    var possibleOptions = this.possibleOptions;
+                                    if(possibleOptions.isEmpty()) {
+                                        return null;
+                                    } else if(possibleOptions.size() == 1) {
+                                        this.firingGuard = this.possibleOptionSources[0];
+                                        return possibleOptions.get(0).b();
+                                    }
                                     
-                                        $3T option = possibleOptions.remove(0);
-                                        boolean mergedThisOne = false;
-                                        for(var other : possibleOptions) {
-                                            if(option.equals(other)) {
-                                                continue;
-                                            }
-                                            if(option.a().canMerge(other.a()) && option.b().canMerge(other.b())) {
-                                                var newPair = new $3T(option.a().merge(other.a()), option.b().merge(other.b()));
-                                                if(seen.contains(newPair)) {
-                                                    continue;
-                                                }
+                                    // Slots are numbered from the most specific from state down, so a counting sort by slot orders the
+                                    // options by specificity in linear time. Note down which slots fired along the way.
+                                    int count = possibleOptions.size();
+                                    int slotCount = this.slotShadows.length;
+                                    int words = (slotCount + 63) >>> 6;
+                                    if(this.firedSlots.length < words) {
+                                        this.firedSlots = new long[words];
+                                    }
+                                    if(this.slotStarts.length < slotCount + 1) {
+                                        this.slotStarts = new int[slotCount + 1];
+                                    }
                                     
-                                                mergedResults.add(newPair);
-                                                mergedThisOne = true;
-                                                seen.add(newPair);
-                                            }
-                                        }
+                                    var slots = this.possibleOptionSlots;
+                                    var firedSlots = this.firedSlots;
+                                    var starts = this.slotStarts;
+                                    var order = this.optionOrder;
+                                    $3T.fill(firedSlots, 0, words, 0L);
+                                    $3T.fill(starts, 0, slotCount + 1, 0);
+                                    
+                                    for(int i = 0; i < count; i++) {
+                                        firedSlots[slots[i] >>> 6] |= 1L << slots[i];
+                                        starts[slots[i] + 1]++;
+                                    }
+                                    for(int slot = 0; slot < slotCount; slot++) {
+                                        starts[slot + 1] += starts[slot];
+                                    }
+                                    for(int i = 0; i < count; i++) {
+                                        order[starts[slots[i]]++] = i;
+                                    }
+                                    
+                                    // An option is shadowed when another option that fired was registered on a more specific version of
+                                    // the same from state. What remains is merged from the most specific option down, skipping any
+                                    // option whose target disagrees with what we've already accepted.
+                                    var mergedValues = this.mergedValues;
+                                    int mergedMask = 0;
+                                    $1T firstAccepted = null;
+                                    int numAccepted = 0;
                                     
-                                        if(!mergedThisOne) {
-                                            finalResults.add(option);
+                                    for(int n = 0; n < count; n++) {
+                                        int i = order[n];
+                                        var shadows = this.slotShadows[slots[i]];
+                                        boolean shadowed = false;
+                                        for(int word = 0; word < shadows.length && !shadowed; word++) {
+                                            shadowed = (shadows[word] & firedSlots[word]) != 0;
                                         }
                                     
-                                        possibleOptions.addAll(mergedResults);
-                                    }
+                                        if(shadowed) {
+                                            continue;
+                                        }
                                     
-                                    // Get the only item
-                                    if(finalResults.size() == 1) {
-                                        return finalResults.get(0).b();
-                                    }
+                                        var option = possibleOptions.get(i);
+                                        var target = option.b();
+                                        int targetMask = target.fieldMask();
+                                        int commonMask = mergedMask & targetMask;
+                                        boolean compatible = true;
+                                        for(int field = 0; field < $2L && compatible; field++) {
+                                            compatible = (commonMask & (1 << field)) == 0 || mergedValues[field].equals(target.field(field));
+                                        }
                                     
-                                    $1T bestOptions = new $2T();
-                                    int bestNumElements = 0;
-                                    for(var option : finalResults) {
-                                        int ourNumElements = option.a().numElements();
-                                        if(ourNumElements < bestNumElements) {
+                                        if(!compatible) {
                                             continue;
-                                        } else if(ourNumElements > bestNumElements) {
-                                            bestOptions = new $2T();
-                                            bestNumElements = ourNumElements;
                                         }
-                                        bestOptions.add(option);
+                                    
+                                        for(int field = 0; field < $2L; field++) {
+                                            if((targetMask & ~mergedMask & (1 << field)) != 0) {
+                                                mergedValues[field] = target.field(field);
+                                            }
+                                        }
+                                    
+                                        mergedMask |= targetMask;
+                                        if(numAccepted++ == 0) {
+                                            firstAccepted = option;
+                                            this.firingGuard = this.possibleOptionSources[i];
+                                        }
                                     }
                                     
-                                    return bestOptions.get(0).b();
+                                    if(numAccepted == 1) {
+                                        return firstAccepted.b();
+                                    }
+                                    
+                                    return $4T.fromFields(mergedMask, mergedValues);
                                     """,
-                            pairList,
-                            ArrayList.class,
                             validator.pairClassName(),
-                            pairSet,
-                            HashSet.class
+                            ((RecordValidator) validator).fieldTypes.size(),
+                            Arrays.class,
+                            stateDataName
                     );
-        } else {
-            getNextStateMethodBuilder.addStatement("return null");
         }
 
-        MethodSpec getNextStateMethod = getNextStateMethodBuilder.build();
+        MethodSpec resolveOptionsMethod = resolveOptionsMethodBuilder.build();
 
         MethodSpec.Builder updateStateMethodBuilder = MethodSpec
                 .methodBuilder("updateState")
                 .addModifiers(Modifier.PRIVATE)
-                .addParameter(stateDataName, "nextStateData");
+                .addParameter(stateDataName, "nextStateData")
+                .addComment("Only set while polling, a transitionTo command always logs without a guard")
+                .addStatement("int guard = this.firingGuard")
+                .addStatement("this.firingGuard = -1")
+                .addCode("\n");
 
         if (validator instanceof RecordValidator rv && rv.supportsStateTransition()) {
             updateStateMethodBuilder.addCode("""
@@ -969,47 +1757,174 @@ public class StateMachineGenerator {
             updateStateMethodBuilder.addCode(code.build());
         }
 
-        updateStateMethodBuilder
+        if (validator instanceof EnumValidator) {
+            updateStateMethodBuilder
+                    .addCode("""
+                                    int edge = edgeIndex(currentState, nextState);
+                                    
+                                    if((failLoudlyEdges[edge >>> 6] & (1L << edge)) != 0) {
+                                        if(metrics != null) {
+                                            metrics.recordFailLoudly();
+                                        }
+                                    
+                                        var failLoudly = new $1T("State transition was requested to fail loudly");
+                                    
+                                        throw new $2T(currentState, nextState, failLoudly);
+                                    }
+                                    
+                                    var commandsScheduled = runTransitionCommands(edge);
+                                    
+                                    if(metrics != null) {
+                                        metrics.recordTransition(currentState, nextState);
+                                    }
+                                    
+                                    if(transitionLog != null) {
+                                        this.logTransition(this.stateId(currentState), this.stateId(nextState), guard, commandsScheduled);
+                                    }
+                                    
+                                    if(flightRecorder != null) {
+                                        flightRecorder.record(flightRecorderId, this.stateId(currentState), this.stateId(nextState), guard);
+                                    }
+                                    
+                                    var previousState = this.currentState;
+                                    this.currentState = nextState;
+                                    this.stateEnteredMicros = $3T.getFPGATime();
+                                    this.publishState();
+                                    
+                                    // Leaving a state for itself still leaves it, so its guards start over too
+                                    var guardIds = this.transitionWhenGuardIds;
+                                    this.restartGuards(
+                                            previousState == nextState ? null : guardIds[previousState.ordinal()],
+                                            guardIds[nextState.ordinal()]
+                                    );
+                                    
+                                    this.callbackDepth++;
+                                    try {
+                                        this.runStateCallbacks(previousState, nextState);
+                                    } finally {
+                                        this.callbackDepth--;
+                                    }
+                                    """,
+                            FailLoudlyException.class,
+                            InvalidStateTransition.class,
+                            RobotController.class);
+        } else {
+            updateStateMethodBuilder
                 .addCode("""
                                 var nextStates = generateToSubDataStates(nextState);
                                 
                                 if(! $1T.disjoint(failLoudlyCache, nextStates)) {
+                                    if(metrics != null) {
+                                        metrics.recordFailLoudly();
+                                    }
+                                
                                     var failLoudly = new $2T("State transition was requested to fail loudly");
                                 
                                     throw new $3T(currentState, nextState, failLoudly);
                                 }
                                 
-                                runTransitionCommands(nextStates);
+                                var commandsScheduled = runTransitionCommands(nextState, nextStates);
                                 
+                                if(metrics != null) {
+                                    metrics.recordTransition(currentState, nextState);
+                                }
+                                
+                                // The next state's id comes with its transition cache, so it's only known once that's loaded
+                                var previousStateId = this.currentStateId;
+                                var previousGuardIds = this.transitionWhenGuardIds;
                                 this.currentState = nextState;
-                                currentStateTopic.set(currentState.toString());
-                                this.currentSubData = generateFromSubDataStates(this.currentState);
-                                this.regenerateTransitionWhenCache();
-                                this.regenerateCommandCache();
-                                this.regenerateFailLoudlyCache();
+                                this.stateEnteredMicros = $4T.getFPGATime();
+                                this.loadTransitionCaches();
+                                this.publishState();
+                                
+                                if(transitionLog != null) {
+                                    this.logTransition(previousStateId, this.currentStateId, guard, commandsScheduled);
+                                }
+                                
+                                if(flightRecorder != null) {
+                                    flightRecorder.record(flightRecorderId, previousStateId, this.currentStateId, guard);
+                                }
+                                
+                                this.restartGuards(previousGuardIds, this.transitionWhenGuardIds);
+                                
+                                this.callbackDepth++;
+                                try {
+                                    this.updateWatchedStates();
+                                } finally {
+                                    this.callbackDepth--;
+                                }
                                 """,
                         Collections.class,
                         FailLoudlyException.class,
-                        InvalidStateTransition.class);
+                        InvalidStateTransition.class,
+                        RobotController.class);
+        }
 
         MethodSpec updateStateMethod = updateStateMethodBuilder.build();
 
-        MethodSpec runTransitionCommands = MethodSpec
-                .methodBuilder("runTransitionCommands")
-                .addModifiers(Modifier.PRIVATE)
-                .addParameter(subDataSetType, "nextStates")
-                .addCode("""
-                        nextStates.forEach(state -> {
-                            if(! transitionCommandCache.containsKey(state)) {
-                                return;
+        MethodSpec runTransitionCommands;
+        if (validator instanceof EnumValidator) {
+            runTransitionCommands = MethodSpec
+                    .methodBuilder("runTransitionCommands")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(int.class, "edge")
+                    .returns(Command[].class)
+                    .addCode("""
+                            var commands = this.transitionCommands[edge];
+                            if(commands == null || this.guardReplay != null) {
+                                return NO_COMMANDS;
                             }
-                        
-                            for(var command : transitionCommandCache.get(state)) {
-                                $1T.getInstance().schedule(command);
+                            
+                            $1T.getInstance().schedule(commands);
+                            
+                            if(metrics != null) {
+                                metrics.recordCommandsScheduled(commands.length);
                             }
-                        });
-                        """, CommandScheduler.class)
-                .build();
+                            
+                            return commands;
+                            """, CommandScheduler.class)
+                    .build();
+        } else {
+            runTransitionCommands = MethodSpec
+                    .methodBuilder("runTransitionCommands")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(validator.originalTypeName(), "nextState")
+                    .addParameter(subDataSetType, "nextStates")
+                    .returns(Command[].class)
+                    .addCode("""
+                            if(this.guardReplay != null) {
+                                return NO_COMMANDS;
+                            }
+                            
+                            // The commands for an edge only depend on the current state's cache, so they're gathered once
+                            var commands = this.edgeCommands.get(nextState);
+                            if(commands == null) {
+                                $2T<$3T> commandList = new $4T<>();
+                                for(var state : nextStates) {
+                                    var stateCommands = transitionCommandCache.get(state);
+                                    if(stateCommands != null) {
+                                        commandList.addAll(stateCommands);
+                                    }
+                                }
+                            
+                                commands = commandList.toArray(new $3T[0]);
+                                this.edgeCommands.put(nextState, commands);
+                            }
+                            
+                            if(commands.length == 0) {
+                                return NO_COMMANDS;
+                            }
+                            
+                            $1T.getInstance().schedule(commands);
+                            
+                            if(metrics != null) {
+                                metrics.recordCommandsScheduled(commands.length);
+                            }
+                            
+                            return commands;
+                            """, CommandScheduler.class, List.class, Command.class, ArrayList.class)
+                    .build();
+        }
 
         List<MethodSpec> verifyStateEnabledMethods = new ArrayList<>();
         innerClassEnabledFields
@@ -1036,16 +1951,43 @@ public class StateMachineGenerator {
                                         verifyStateEnabledMethodBuilder
                                                 .beginControlFlow("if(!this.$L)", fieldName)
                                                 .addStatement("this.$L = true", fieldName)
+                                                .addStatement("this.fromSubDataSets.clear()")
                                                 .addStatement("this.currentSubData = this.generateFromSubDataStates(currentState)")
+                                                .addStatement("this.transitionCaches.clear()")
+                                                .addStatement("this.regenerateTransitionWhenCache()")
+                                                .addStatement("this.regenerateEventCache()")
                                                 .endControlFlow();
                                     } else {
-                                        verifyStateEnabledMethodBuilder.addStatement("this.$L = true", fieldName);
+                                        verifyStateEnabledMethodBuilder
+                                                .beginControlFlow("if(!this.$L)", fieldName)
+                                                .addStatement("this.$L = true", fieldName)
+                                                .addStatement("this.toSubDataSets.clear()")
+                                                .endControlFlow();
                                     }
 
                                     verifyStateEnabledMethodBuilder
                                             .addStatement("return")
                                             .endControlFlow();
                                 });
+
+                        if (isLinearRecord()) {
+                            verifyStateEnabledMethodBuilder
+                                    .beginControlFlow("if(state instanceof $T masked)", ((RecordValidator) validator).maskedClassName())
+                                    .beginControlFlow("if(this.$LMaskedEnabled.add(masked.fieldMask()))", key)
+                                    .addStatement("this.$LSubDataSets.clear()", key);
+
+                            if (key.equals(FROM)) {
+                                verifyStateEnabledMethodBuilder
+                                        .addStatement("this.currentSubData = this.generateFromSubDataStates(currentState)")
+                                        .addStatement("this.transitionCaches.clear()")
+                                        .addStatement("this.regenerateTransitionWhenCache()")
+                                        .addStatement("this.regenerateEventCache()");
+                            }
+
+                            verifyStateEnabledMethodBuilder
+                                    .endControlFlow()
+                                    .endControlFlow();
+                        }
                     }
 
                     verifyStateEnabledMethods.add(verifyStateEnabledMethodBuilder.build());
@@ -1066,7 +2008,12 @@ public class StateMachineGenerator {
                                 .addStatement("return Set.of(state)");
                     } else if (validator instanceof RecordValidator rv) {
                         generateSubDataStateBuilder
-                                .addStatement("$1T result = new $2T<>()", subDataSetType, HashSet.class);
+                                .addStatement("var cached = this.$LSubDataSets.get(state)", key)
+                                .beginControlFlow("if(cached != null)")
+                                .addStatement("return cached")
+                                .endControlFlow()
+                                .addCode("\n")
+                                .addStatement("$1T result = new $2T<>()", subDataSetType, LinkedHashSet.class);
 
                         rv.fieldTypes.forEach(
                                 (className) -> generateSubDataStateBuilder.addStatement("$1T $2LField = state.$2L()", className, rv.fieldNameMap.get(className))
@@ -1082,11 +2029,23 @@ public class StateMachineGenerator {
 
                                     generateSubDataStateBuilder
                                             .beginControlFlow("if(this.$L)", enabledField.name())
-                                            .addStatement("result.add($L)", rv.emitDataClass(innerClassName, f -> f + "Field"))
+                                            .addStatement("result.add(this.canonical($L))", rv.emitDataClass(innerClassName, f -> f + "Field"))
                                             .endControlFlow();
                                 });
 
+                        if (rv.isLinear()) {
+                            generateSubDataStateBuilder
+                                    .beginControlFlow("if(!this.$LMaskedEnabled.isEmpty())", key)
+                                    .addStatement("$T[] values = { $L }", Object.class, rv.emitFieldNames(rv.fieldTypes, f -> f + "Field", true))
+                                    .beginControlFlow("for(int fieldMask : this.$LMaskedEnabled)", key)
+                                    .addStatement("result.add(this.canonical($T.fromFields(fieldMask, values)))", stateDataName)
+                                    .endControlFlow()
+                                    .endControlFlow();
+                        }
+
                         generateSubDataStateBuilder
+                                .addStatement("result = $T.unmodifiableSet(result)", Collections.class)
+                                .addStatement("this.$LSubDataSets.put(state, result)", key)
                                 .addStatement("return result");
                     }
 
@@ -1097,7 +2056,27 @@ public class StateMachineGenerator {
                 .methodBuilder("regenerateTransitionWhenCache")
                 .addModifiers(Modifier.PRIVATE)
                 .addCode("""
-                                this.transitionWhenCache = new $1T<>();
+                                // Every sub state gets a slot, most specific first, and knows which more specific slots shadow it
+                                var fromStates = new $2T<$7T>(this.currentSubData);
+                                fromStates.sort($8T.comparingInt(state -> -$9T.bitCount(state.fieldMask())));
+                                
+                                this.fromSlots = new $10T<>();
+                                this.slotShadows = new long[fromStates.size()][];
+                                for (int slot = 0; slot < fromStates.size(); slot++) {
+                                    int fromMask = fromStates.get(slot).fieldMask();
+                                    var shadows = new long[(slot + 63) >>> 6];
+                                    for (int other = 0; other < slot; other++) {
+                                        int otherMask = fromStates.get(other).fieldMask();
+                                        if (otherMask != fromMask && (otherMask & fromMask) == fromMask) {
+                                            shadows[other >>> 6] |= 1L << other;
+                                        }
+                                    }
+                                
+                                    this.fromSlots.put(fromStates.get(slot), slot);
+                                    this.slotShadows[slot] = shadows;
+                                }
+                                
+                                $4T<$9T, $6T<$3T>> transitionWhenCache = new $1T<>();
                                 
                                 this.currentSubData.forEach(state -> {
                                     if (!this.transitionWhenMap.containsKey(state)) {
@@ -1105,19 +2084,45 @@ public class StateMachineGenerator {
                                     }
                                 
                                     for (var fromEntry : this.transitionWhenMap.get(state).entrySet()) {
-                                        for (var supplier : fromEntry.getValue()) {
-                                            if (!this.transitionWhenCache.containsKey(supplier)) {
-                                                this.transitionWhenCache.put(supplier, new $2T());
+                                        for (var guardId : fromEntry.getValue()) {
+                                            if (!transitionWhenCache.containsKey(guardId)) {
+                                                transitionWhenCache.put(guardId, new $2T<>());
                                             }
                                 
-                                            this.transitionWhenCache.get(supplier).add(new $3T(state, fromEntry.getKey()));
+                                            transitionWhenCache.get(guardId).add(new $3T(state, fromEntry.getKey()));
                                         }
                                     }
                                 });
+                                
+                                this.transitionWhenSuppliers = new $5T[transitionWhenCache.size()];
+                                this.transitionWhenOptions = new $3T[transitionWhenCache.size()][];
+                                this.transitionWhenOptionSlots = new int[transitionWhenCache.size()][];
+                                this.transitionWhenGuardIds = new int[transitionWhenCache.size()];
+                                
+                                int index = 0;
+                                for (var entry : transitionWhenCache.entrySet()) {
+                                    this.transitionWhenSuppliers[index] = this.guardSuppliers.get(entry.getKey());
+                                    this.transitionWhenOptions[index] = entry.getValue().toArray(new $3T[0]);
+                                    this.transitionWhenOptionSlots[index] = new int[entry.getValue().size()];
+                                    for (int i = 0; i < entry.getValue().size(); i++) {
+                                        this.transitionWhenOptionSlots[index][i] = this.fromSlots.get(entry.getValue().get(i).a());
+                                    }
+                                    this.transitionWhenGuardIds[index] = entry.getKey();
+                                    index++;
+                                }
+                                
+                                this.sortTransitionWhenCache();
                                 """,
-                        HashMap.class,
+                        LinkedHashMap.class,
                         ArrayList.class,
-                        validator.pairClassName()
+                        validator.pairClassName(),
+                        Map.class,
+                        BooleanSupplier.class,
+                        List.class,
+                        stateDataName,
+                        Comparator.class,
+                        Integer.class,
+                        HashMap.class
                 )
                 .build();
 
@@ -1126,6 +2131,7 @@ public class StateMachineGenerator {
                 .addModifiers(Modifier.PRIVATE)
                 .addCode("""
                                 this.transitionCommandCache = new $1T<>();
+                                this.edgeCommands = new $4T<>(CACHED_EDGES);
                                 
                                 this.currentSubData.forEach(state -> {
                                     if (!this.transitionCommandMap.containsKey(state)) {
@@ -1147,16 +2153,17 @@ public class StateMachineGenerator {
                                     }
                                 });
                                 """,
-                        HashMap.class,
+                        IdentityHashMap.class,
                         commandListType,
-                        ArrayList.class)
+                        ArrayList.class,
+                        LruCache.class)
                 .build();
 
         MethodSpec regenerateFailLoudlyCacheMethod = MethodSpec
                 .methodBuilder("regenerateFailLoudlyCache")
                 .addModifiers(Modifier.PRIVATE)
                 .addCode("""
-                                this.failLoudlyCache = new $1T<>();
+                                this.failLoudlyCache = $1T.newSetFromMap(new $2T<>());
                                 
                                 this.currentSubData.forEach(state -> {
                                     if (!this.failLoudlyMap.containsKey(state)) {
@@ -1166,75 +2173,2134 @@ public class StateMachineGenerator {
                                     this.failLoudlyCache.addAll(this.failLoudlyMap.get(state));
                                 });
                                 """,
-                        HashSet.class)
+                        Collections.class,
+                        IdentityHashMap.class)
                 .build();
 
-        TypeSpec.Builder typeBuilder = TypeSpec
-                .classBuilder(stateMachineClassName)
-                .addModifiers(Modifier.PUBLIC)
-                .addField(managerField)
-                .addField(networkTableInstance)
-                .addField(currentStateTopic)
-                .addField(currentStateField)
-                .addField(currentSubDataField)
-                .addField(transitionWhenMap)
-                .addField(transitionWhenCache)
-                .addField(transitionCommandMap)
-                .addField(transitionCommandCache)
-                .addField(failLoudlyMap)
-                .addField(failLoudlyCache)
-                .addField(triggerMap);
-
-        if (controlWord != null) {
-            typeBuilder.addField(controlWord);
+        // Every registered sub-data value is interned so it's a single instance, which lets the maps above key on
+        // identity. Sub-data built from a full state is swapped for the registered instance when there is one, and
+        // anything else can't match a registration, so it isn't kept. The sub-data sets for the most recently visited
+        // full states are remembered so they only get built once.
+        var subDataSetsType = ParameterizedTypeName.get(ClassName.get(Map.class), validator.originalTypeName(), subDataSetType);
+        List<FieldSpec> subDataSetsFields = new ArrayList<>();
+        for (var key : innerClassEnabledFields.keySet().stream().sorted().toList()) {
+            subDataSetsFields.add(FieldSpec
+                    .builder(subDataSetsType, key + "SubDataSets")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T<>(CACHED_STATES)", LruCache.class)
+                    .build());
         }
 
-        // We want to add these boolean values to the state machine, but straight from the map they're out of order.
-        innerClassEnabledFields
-                .forEach((key, fieldMap) -> {
-                    fieldMap
-                            .values()
-                            .stream()
-                            .sorted(Comparator.comparing(FieldSpec::name))
-                            .forEach(typeBuilder::addField);
-                });
-
-        for (var constructor : constructors) {
-            typeBuilder.addMethod(constructor);
+        // Linear records remember which masks of fields have been used with the generic data class
+        List<FieldSpec> maskedEnabledFields = new ArrayList<>();
+        if (isLinearRecord()) {
+            for (var key : innerClassEnabledFields.keySet().stream().sorted().toList()) {
+                maskedEnabledFields.add(FieldSpec
+                        .builder(ParameterizedTypeName.get(Set.class, Integer.class), key + "MaskedEnabled")
+                        .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>()", LinkedHashSet.class)
+                        .build());
+            }
         }
 
-        typeBuilder.addMethod(currentStateMethod);
+        FieldSpec subDataPool = FieldSpec
+                .builder(ParameterizedTypeName.get(ClassName.get(Map.class), stateDataName, stateDataName), "subDataPool")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", HashMap.class)
+                .build();
 
-        for (var stateMethod : stateMethods) {
-            typeBuilder.addMethod(stateMethod);
+        MethodSpec.Builder internMethodBuilder = MethodSpec
+                .methodBuilder("intern")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(stateDataName, "data")
+                .returns(stateDataName)
+                .addCode("""
+                                var canonical = this.subDataPool.putIfAbsent(data, data);
+                                if(canonical != null) {
+                                    return canonical;
+                                }
+                                
+                                """)
+                .addComment("Sub-data sets built before this value was registered hold their own copy of it");
+        for (var field : subDataSetsFields) {
+            internMethodBuilder.addStatement("this.$N.clear()", field);
         }
 
-        for (var transitionToMethod : transitionToMethods) {
-            typeBuilder.addMethod(transitionToMethod);
-        }
+        MethodSpec internMethod = internMethodBuilder
+                .addStatement("this.transitionCaches.clear()")
+                .addStatement("this.loadTransitionCaches()")
+                .addStatement("return data")
+                .build();
 
-        typeBuilder
-                .addMethod(runPollCommandMethod)
-                .addMethod(pollMethod)
-                .addMethod(getNextStateMethod)
-                .addMethod(updateStateMethod)
-                .addMethod(runTransitionCommands);
+        MethodSpec canonicalMethod = MethodSpec
+                .methodBuilder("canonical")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(stateDataName, "data")
+                .returns(stateDataName)
+                .addStatement("return this.subDataPool.getOrDefault(data, data)")
+                .build();
 
-        for (var verifyStateEnabledMethod : verifyStateEnabledMethods) {
-            typeBuilder.addMethod(verifyStateEnabledMethod);
-        }
+        FieldSpec cachedStates = FieldSpec
+                .builder(int.class, "CACHED_STATES")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("256")
+                .build();
+
+        FieldSpec cachedEdges = FieldSpec
+                .builder(int.class, "CACHED_EDGES")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("32")
+                .build();
+
+        // Every cache above only depends on the current state and what has been registered, so we remember them for the
+        // most recently visited states
+        ClassName transitionCacheName = stateMachineClassName.nestedClass("TransitionCache");
+
+        TypeSpec transitionCacheRecord = TypeSpec
+                .recordBuilder(transitionCacheName)
+                .addModifiers(Modifier.PRIVATE)
+                .recordConstructor(MethodSpec
+                        .constructorBuilder()
+                        .addParameter(int.class, "stateId")
+                        .addParameter(subDataSetType, "subData")
+                        .addParameter(transitionWhenSuppliers.type(), "transitionWhenSuppliers")
+                        .addParameter(transitionWhenOptions.type(), "transitionWhenOptions")
+                        .addParameter(int[][].class, "transitionWhenOptionSlots")
+                        .addParameter(int[].class, "transitionWhenGuardIds")
+                        .addParameter(fromSlotsType, "fromSlots")
+                        .addParameter(long[][].class, "slotShadows")
+                        .addParameter(transitionWhenOptions.type(), "eventOptions")
+                        .addParameter(int[][].class, "eventOptionSlots")
+                        .addParameter(transitionCommandCacheType, "transitionCommandCache")
+                        .addParameter(edgeCommandsType, "edgeCommands")
+                        .addParameter(failLoudlyCacheType, "failLoudlyCache")
+                        .build())
+                .build();
+
+        FieldSpec transitionCaches = FieldSpec
+                .builder(
+                        ParameterizedTypeName.get(ClassName.get(Map.class), validator.originalTypeName(), transitionCacheName),
+                        "transitionCaches"
+                )
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>(CACHED_STATES)", LruCache.class)
+                .build();
+
+        MethodSpec loadTransitionCachesMethod = MethodSpec
+                .methodBuilder("loadTransitionCaches")
+                .addModifiers(Modifier.PRIVATE)
+                .addCode("""
+                                var cache = this.transitionCaches.get(this.currentState);
+                                if(cache == null) {
+                                    this.currentStateId = this.stateId(this.currentState);
+                                    this.currentSubData = generateFromSubDataStates(this.currentState);
+                                    this.regenerateTransitionWhenCache();
+                                    this.regenerateEventCache();
+                                    this.regenerateCommandCache();
+                                    this.regenerateFailLoudlyCache();
+                                
+                                    cache = new $1T(
+                                            this.currentStateId,
+                                            this.currentSubData,
+                                            this.transitionWhenSuppliers,
+                                            this.transitionWhenOptions,
+                                            this.transitionWhenOptionSlots,
+                                            this.transitionWhenGuardIds,
+                                            this.fromSlots,
+                                            this.slotShadows,
+                                            this.eventOptions,
+                                            this.eventOptionSlots,
+                                            this.transitionCommandCache,
+                                            this.edgeCommands,
+                                            this.failLoudlyCache
+                                    );
+                                    this.transitionCaches.put(this.currentState, cache);
+                                    return;
+                                }
+                                
+                                this.currentStateId = cache.stateId();
+                                this.currentSubData = cache.subData();
+                                this.transitionWhenSuppliers = cache.transitionWhenSuppliers();
+                                this.transitionWhenOptions = cache.transitionWhenOptions();
+                                this.transitionWhenOptionSlots = cache.transitionWhenOptionSlots();
+                                this.transitionWhenGuardIds = cache.transitionWhenGuardIds();
+                                this.fromSlots = cache.fromSlots();
+                                this.slotShadows = cache.slotShadows();
+                                this.eventOptions = cache.eventOptions();
+                                this.eventOptionSlots = cache.eventOptionSlots();
+                                this.transitionCommandCache = cache.transitionCommandCache();
+                                this.edgeCommands = cache.edgeCommands();
+                                this.failLoudlyCache = cache.failLoudlyCache();
+                                """,
+                        transitionCacheName)
+                .build();
+
+        TypeSpec.Builder typeBuilder = TypeSpec
+                .classBuilder(stateMachineClassName)
+                .addModifiers(Modifier.PUBLIC)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(PollableStateMachine.class), validator.originalTypeName()))
+                .addField(managerField)
+                .addField(currentStateField)
+                .addField(metricsField)
+                .addField(FieldSpec.builder(int.class, "guardCount").addModifiers(Modifier.PRIVATE).build())
+                .addField(FieldSpec.builder(int.class, "firingGuard").addModifiers(Modifier.PRIVATE).initializer("-1").build());
+
+        addStatePublishing(typeBuilder);
+        addTransitionLogging(typeBuilder);
+        addGuardRecording(typeBuilder);
+        addGuardRates(typeBuilder);
+        addGuardFilters(typeBuilder);
+        addGuardRestarts(typeBuilder);
+        addEdgeGuards(typeBuilder);
+        addGuardPriorities(typeBuilder);
+        addEventDispatch(typeBuilder);
+        addPendingActions(typeBuilder);
+        addStateCallbacks(typeBuilder);
+        addTimeouts(typeBuilder);
+
+        if (validator instanceof EnumValidator) {
+            addEnumTransitionTables(typeBuilder);
+        } else {
+            typeBuilder
+                    .addField(currentSubDataField)
+                    .addField(transitionWhenMap)
+                    .addField(transitionWhenSuppliers)
+                    .addField(transitionWhenOptions)
+                    .addField(transitionWhenOptionSlots)
+                    .addField(transitionWhenGuardIds)
+                    .addField(fromSlots)
+                    .addField(slotShadows)
+                    .addField(guardSuppliers)
+                    .addField(transitionCommandMap)
+                    .addField(transitionCommandCache)
+                    .addField(edgeCommands)
+                    .addField(failLoudlyMap)
+                    .addField(failLoudlyCache)
+                    .addField(triggerMap)
+                    .addField(cachedStates)
+                    .addField(cachedEdges)
+                    .addField(transitionCaches)
+                    .addField(subDataPool)
+                    .addFields(subDataSetsFields)
+                    .addFields(maskedEnabledFields);
+
+            typeBuilder
+                    .addField(possibleOptions)
+                    .addField(possibleOptionSources)
+                    .addField(possibleOptionSlots)
+                    .addField(optionOrder)
+                    .addField(slotStarts)
+                    .addField(firedSlots)
+                    .addField(mergedValues);
+        }
+
+        if (controlWord != null) {
+            typeBuilder.addField(controlWord);
+        }
+
+        // We want to add these boolean values to the state machine, but straight from the map they're out of order.
+        innerClassEnabledFields
+                .forEach((key, fieldMap) -> {
+                    fieldMap
+                            .values()
+                            .stream()
+                            .sorted(Comparator.comparing(FieldSpec::name))
+                            .forEach(typeBuilder::addField);
+                });
+
+        for (var constructor : constructors) {
+            typeBuilder.addMethod(constructor);
+        }
 
-        for (var generateSubDataStatesMethod : generateSubDataStatesMethods) {
-            typeBuilder.addMethod(generateSubDataStatesMethod);
+        typeBuilder.addMethod(currentStateMethod);
+
+        for (var stateMethod : stateMethods) {
+            typeBuilder.addMethod(stateMethod);
+        }
+
+        for (var transitionToMethod : transitionToMethods) {
+            typeBuilder.addMethod(transitionToMethod);
         }
 
         typeBuilder
-                .addMethod(regenerateTransitionWhenCacheMethod)
-                .addMethod(regenerateCommandCacheMethod)
-                .addMethod(regenerateFailLoudlyCacheMethod);
+                .addMethod(runPollCommandMethod)
+                .addMethod(enableMetricsMethod)
+                .addMethod(pollMethod)
+                .addMethod(pollWithModeMethod)
+                .addMethod(readsDriverStationMethod)
+                .addMethod(readDriverStationMethod)
+                .addMethod(pollStateMethod)
+                .addMethod(getNextStateMethod)
+                .addMethod(updateStateMethod)
+                .addMethod(runTransitionCommands);
+
+        if (validator instanceof EnumValidator) {
+            MethodSpec edgeIndex = MethodSpec
+                    .methodBuilder("edgeIndex")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(stateDataName, "fromState")
+                    .addParameter(stateDataName, "toState")
+                    .returns(int.class)
+                    .addStatement("return fromState.ordinal() * STATES.length + toState.ordinal()")
+                    .build();
+
+            typeBuilder.addMethod(edgeIndex);
+        } else {
+            for (var verifyStateEnabledMethod : verifyStateEnabledMethods) {
+                typeBuilder.addMethod(verifyStateEnabledMethod);
+            }
+
+            for (var generateSubDataStatesMethod : generateSubDataStatesMethods) {
+                typeBuilder.addMethod(generateSubDataStatesMethod);
+            }
+
+            typeBuilder
+                    .addMethod(regenerateTransitionWhenCacheMethod)
+                    .addMethod(regenerateCommandCacheMethod)
+                    .addMethod(regenerateFailLoudlyCacheMethod)
+                    .addMethod(loadTransitionCachesMethod)
+                    .addMethod(addPossibleOptionMethod)
+                    .addMethod(resolveOptionsMethod)
+                    .addMethod(internMethod)
+                    .addMethod(canonicalMethod)
+                    .addType(transitionCacheRecord);
+        }
 
         typeBuilder.addType(internalStateManager);
 
         this.environment.writeType(typeBuilder.build());
     }
+
+    /**
+     * Each state machine publishes under its own {@code StateMachine/<name>} table, claimed through
+     * {@link StatePublishing#claimName} so two instances don't silently share one. The string for a state is only built
+     * the first time that state is seen, so publishing in the control loop never concatenates strings. In
+     * {@link StatePublishing#ID} mode only a number goes out per transition, and each state's name is published once,
+     * to its own topic, when the state is first seen.
+     */
+    private void addStatePublishing(TypeSpec.Builder typeBuilder) {
+        FieldSpec networkTableInstance = FieldSpec
+                .builder(NetworkTableInstance.class, "networkTableInstance")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("$T.getDefault()", NetworkTableInstance.class)
+                .build();
+
+        FieldSpec name = FieldSpec
+                .builder(String.class, "name")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec publishing = FieldSpec
+                .builder(StatePublishing.class, "publishing")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("$T.NONE", StatePublishing.class)
+                .build();
+
+        FieldSpec currentStateTopic = FieldSpec
+                .builder(StringPublisher.class, "currentStateTopic")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec currentStateIdTopic = FieldSpec
+                .builder(IntegerPublisher.class, "currentStateIdTopic")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        // One topic per state id, only in ID mode
+        FieldSpec stateNameTopics = FieldSpec
+                .builder(ParameterizedTypeName.get(List.class, StringPublisher.class), "stateNameTopics")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        typeBuilder
+                .addField(networkTableInstance)
+                .addField(name)
+                .addField(publishing)
+                .addField(currentStateTopic)
+                .addField(currentStateIdTopic)
+                .addField(stateNameTopics);
+
+        MethodSpec.Builder stateIdMethodBuilder = MethodSpec
+                .methodBuilder("stateId")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(validator.originalTypeName(), "state")
+                .returns(int.class);
+
+        MethodSpec.Builder stateNameMethodBuilder = MethodSpec
+                .methodBuilder("stateName")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "id")
+                .returns(String.class);
+
+        MethodSpec.Builder stateCountMethodBuilder = MethodSpec
+                .methodBuilder("stateCount")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(int.class);
+
+        CodeBlock currentStateId;
+
+        if (validator instanceof EnumValidator) {
+            FieldSpec stateNames = FieldSpec
+                    .builder(String[].class, "STATE_NAMES")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.stream($T.values()).map($T::toString).toArray($T[]::new)", Arrays.class, stateDataName, Object.class, String.class)
+                    .build();
+
+            typeBuilder.addField(stateNames);
+
+            stateIdMethodBuilder.addStatement("return state.ordinal()");
+            stateNameMethodBuilder.addStatement("return STATE_NAMES[id]");
+            stateCountMethodBuilder.addStatement("return STATE_NAMES.length");
+            currentStateId = CodeBlock.of("this.currentState.ordinal()");
+        } else {
+            // Records don't have ordinals, so states are numbered in the order the state machine first sees them. The
+            // id of the current state is kept with its transition cache, so taking a transition doesn't hash the
+            // record again to find it.
+            FieldSpec stateIds = FieldSpec
+                    .builder(ParameterizedTypeName.get(ClassName.get(Map.class), validator.originalTypeName(), ClassName.get(Integer.class)), "stateIds")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T<>()", HashMap.class)
+                    .build();
+
+            FieldSpec stateNames = FieldSpec
+                    .builder(ParameterizedTypeName.get(List.class, String.class), "stateNames")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T<>()", ArrayList.class)
+                    .build();
+
+            FieldSpec currentStateIdField = FieldSpec
+                    .builder(int.class, "currentStateId")
+                    .addModifiers(Modifier.PRIVATE)
+                    .build();
+
+            typeBuilder
+                    .addField(stateIds)
+                    .addField(stateNames)
+                    .addField(currentStateIdField);
+
+            stateIdMethodBuilder.addCode("""
+                    var id = this.stateIds.get(state);
+                    if(id != null) {
+                        return id;
+                    }
+                    
+                    int newId = this.stateNames.size();
+                    this.stateIds.put(state, newId);
+                    this.stateNames.add(state.toString());
+                    
+                    this.publishStateNames();
+                    if(this.stateNamesLog != null) {
+                        this.stateNamesLog.append(this.stateNames.get(newId));
+                    }
+                    if(this.flightRecorder != null) {
+                        this.flightRecorder.registerState(this.flightRecorderId, newId, this.stateNames.get(newId));
+                    }
+                    
+                    return newId;
+                    """);
+            stateNameMethodBuilder.addStatement("return this.stateNames.get(id)");
+            stateCountMethodBuilder.addStatement("return this.stateNames.size()");
+            currentStateId = CodeBlock.of("this.currentStateId");
+        }
+
+        MethodSpec configurePublishing = MethodSpec
+                .methodBuilder("configurePublishing")
+                .addJavadoc("""
+                        Moves where this state machine publishes its current state. Every instance needs its own name. The default
+                        is the state type's simple name, with a number added for every instance after the first, and picking a
+                        name another state machine already uses reports a warning to the driver station.
+                        
+                        @param name the table to publish under, inside of {@code StateMachine/}
+                        @param publishing what to publish
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "name")
+                .addParameter(StatePublishing.class, "publishing")
+                .addCode("""
+                        $1T.requireNonNull(name);
+                        $1T.requireNonNull(publishing);
+                        
+                        if(this.currentStateTopic != null) {
+                            this.currentStateTopic.close();
+                            this.currentStateTopic = null;
+                        }
+                        if(this.currentStateIdTopic != null) {
+                            this.currentStateIdTopic.close();
+                            this.currentStateIdTopic = null;
+                        }
+                        if(this.stateNameTopics != null) {
+                            for(var topic : this.stateNameTopics) {
+                                topic.close();
+                            }
+                            this.stateNameTopics = null;
+                        }
+                        
+                        if(!name.equals(this.name)) {
+                            if(this.name != null) {
+                                $2T.releaseName(this.name);
+                            }
+                            if(!$2T.claimName(name)) {
+                                $3T.reportWarning("More than one state machine publishes under StateMachine/" + name
+                                        + ", give each of them its own name with configurePublishing", false);
+                            }
+                            this.name = name;
+                        }
+                        
+                        this.publishing = publishing;
+                        var table = "StateMachine/" + name;
+                        switch(publishing) {
+                            case NAME -> this.currentStateTopic = this.networkTableInstance.getStringTopic(table + "/currentState").publish();
+                            case ID -> {
+                                this.currentStateIdTopic = this.networkTableInstance.getIntegerTopic(table + "/currentStateId").publish();
+                                this.stateNameTopics = new $4T<>();
+                                this.publishStateNames();
+                            }
+                            case NONE -> {
+                            }
+                        }
+                        
+                        this.publishState();
+                        """, Objects.class, StatePublishing.class, DriverStation.class, ArrayList.class)
+                .build();
+
+        MethodSpec publishingName = MethodSpec
+                .methodBuilder("publishingName")
+                .addJavadoc("""
+                        @return the table inside of {@code StateMachine/} this state machine publishes and logs under
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("return this.name")
+                .build();
+
+        MethodSpec publishStateNames = MethodSpec
+                .methodBuilder("publishStateNames")
+                .addModifiers(Modifier.PRIVATE)
+                .addComment("Names never change once a state has an id, so only states seen since the last call are published")
+                .addCode("""
+                        var topics = this.stateNameTopics;
+                        if(topics == null) {
+                            return;
+                        }
+                        
+                        for(int id = topics.size(); id < this.stateCount(); id++) {
+                            var topic = this.networkTableInstance.getStringTopic("StateMachine/" + this.name + "/stateNames/" + id).publish();
+                            topic.set(this.stateName(id));
+                            topics.add(topic);
+                        }
+                        """)
+                .build();
+
+        MethodSpec publishState = MethodSpec
+                .methodBuilder("publishState")
+                .addModifiers(Modifier.PRIVATE)
+                .addCode("""
+                        switch(this.publishing) {
+                            case NAME -> this.currentStateTopic.set(this.stateName($1L));
+                            case ID -> this.currentStateIdTopic.set($1L);
+                            case NONE -> {
+                            }
+                        }
+                        """, currentStateId)
+                .build();
+
+        typeBuilder
+                .addMethod(configurePublishing)
+                .addMethod(publishingName)
+                .addMethod(publishStateNames)
+                .addMethod(publishState)
+                .addMethod(stateIdMethodBuilder.build())
+                .addMethod(stateNameMethodBuilder.build())
+                .addMethod(stateCountMethodBuilder.build());
+    }
+
+    /**
+     * Transitions are logged as a fixed size struct of state ids, so nothing is turned into a string while the robot
+     * is running. Each state machine gets its own {@code Transition} type and struct serializer; for enums the schema
+     * carries the state names, and for records the names are logged next to the transitions as new states show up.
+     * Commands get ids the same way, the first time one is scheduled while logging, and every transition logs the ids of
+     * the commands it scheduled. The id arrays are kept with the command arrays they were built from, so a transition
+     * taken before doesn't build them again. The flight recorder uses the same state ids.
+     */
+    private void addTransitionLogging(TypeSpec.Builder typeBuilder) {
+        ClassName transitionName = stateMachineClassName.nestedClass("Transition");
+        ClassName transitionStructName = stateMachineClassName.nestedClass("TransitionStruct");
+
+        String idSchema = "int32";
+        if (validator instanceof EnumValidator) {
+            List<String> constants = new ArrayList<>();
+            for (var element : environment.element().getEnclosedElements()) {
+                if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+                    constants.add(element.getSimpleName() + "=" + constants.size());
+                }
+            }
+            idSchema = "enum {" + String.join(", ", constants) + "} int32";
+        }
+
+        String schema = "%1$s from;%1$s to;int32 guard;int32 commandsScheduled".formatted(idSchema);
+
+        List<String> transitionFields = List.of("from", "to", "guard", "commandsScheduled");
+
+        TypeSpec.Builder transitionBuilder = TypeSpec
+                .classBuilder(transitionName)
+                .addJavadoc("""
+                        One transition taken by the state machine. The state machine reuses a single instance while logging, so copy
+                        out anything you want to keep.
+                        
+                        <p>{@code from} and {@code to} are state ids, see {@link $1T}. {@code guard} is the transitionWhen
+                        that caused the transition, numbered in the order they were registered, or -1 if the transition was
+                        requested directly. {@code commandsScheduled} is how many commands it scheduled; which ones they were is
+                        logged next to it in {@code commands}.
+                        """, StatePublishing.class)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec
+                        .builder(transitionStructName, "struct")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", transitionStructName)
+                        .build());
+
+        MethodSpec.Builder transitionConstructor = MethodSpec
+                .constructorBuilder()
+                .addModifiers(Modifier.PUBLIC);
+
+        for (var field : transitionFields) {
+            transitionBuilder.addField(int.class, field, Modifier.PRIVATE);
+            transitionConstructor
+                    .addParameter(int.class, field)
+                    .addStatement("this.$1L = $1L", field);
+            transitionBuilder.addMethod(MethodSpec
+                    .methodBuilder(field)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(int.class)
+                    .addStatement("return $L", field)
+                    .build());
+        }
+
+        transitionBuilder.addMethod(transitionConstructor.build());
+
+        TypeSpec transitionStruct = TypeSpec
+                .classBuilder(transitionStructName)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Struct.class), transitionName))
+                .addMethod(MethodSpec
+                        .methodBuilder("getTypeClass")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(ParameterizedTypeName.get(ClassName.get(Class.class), transitionName))
+                        .addStatement("return $T.class", transitionName)
+                        .build())
+                .addMethod(MethodSpec
+                        .methodBuilder("getTypeName")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(String.class)
+                        // Struct names are shared by everything logged, so they're qualified by package to keep records with
+                        // the same name apart. Schemas only allow identifier characters, so the dots become underscores.
+                        .addStatement("return $S", validator.originalTypeName().canonicalName().replace('.', '_') + "Transition")
+                        .build())
+                .addMethod(MethodSpec
+                        .methodBuilder("getSize")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return kSizeInt32 * $L", transitionFields.size())
+                        .build())
+                .addMethod(MethodSpec
+                        .methodBuilder("getSchema")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(String.class)
+                        .addStatement("return $S", schema)
+                        .build())
+                .addMethod(MethodSpec
+                        .methodBuilder("unpack")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(ByteBuffer.class, "bb")
+                        .returns(transitionName)
+                        .addStatement("return new $T(bb.getInt(), bb.getInt(), bb.getInt(), bb.getInt())", transitionName)
+                        .build())
+                .addMethod(MethodSpec
+                        .methodBuilder("pack")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(ByteBuffer.class, "bb")
+                        .addParameter(transitionName, "value")
+                        .addCode("""
+                                bb.putInt(value.from);
+                                bb.putInt(value.to);
+                                bb.putInt(value.guard);
+                                bb.putInt(value.commandsScheduled);
+                                """)
+                        .build())
+                .build();
+
+        FieldSpec transitionLog = FieldSpec
+                .builder(ParameterizedTypeName.get(ClassName.get(StructLogEntry.class), transitionName), "transitionLog")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec stateNamesLog = FieldSpec
+                .builder(StringLogEntry.class, "stateNamesLog")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec commandsLog = FieldSpec
+                .builder(IntegerArrayLogEntry.class, "commandsLog")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec commandNamesLog = FieldSpec
+                .builder(StringLogEntry.class, "commandNamesLog")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec commandIds = FieldSpec
+                .builder(ParameterizedTypeName.get(Map.class, Command.class, Integer.class), "commandIds")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", IdentityHashMap.class)
+                .build();
+
+        // Arrays compare by identity, and the ones evicted from the edge caches shouldn't be kept alive by this
+        FieldSpec loggedCommandIds = FieldSpec
+                .builder(ParameterizedTypeName.get(Map.class, Command[].class, long[].class), "loggedCommandIds")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", WeakHashMap.class)
+                .build();
+
+        FieldSpec noCommands = FieldSpec
+                .builder(Command[].class, "NO_COMMANDS")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T[0]", Command.class)
+                .build();
+
+        FieldSpec noCommandIds = FieldSpec
+                .builder(long[].class, "NO_COMMAND_IDS")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new long[0]")
+                .build();
+
+        FieldSpec loggedTransition = FieldSpec
+                .builder(transitionName, "loggedTransition")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T(-1, -1, -1, 0)", transitionName)
+                .build();
+
+        MethodSpec enableTransitionLoggingDefault = MethodSpec
+                .methodBuilder("enableTransitionLogging")
+                .addJavadoc("Logs every transition to the log started by {@link $T}.\n", DataLogManager.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this.enableTransitionLogging($T.getLog())", DataLogManager.class)
+                .build();
+
+        MethodSpec enableTransitionLogging = MethodSpec
+                .methodBuilder("enableTransitionLogging")
+                .addJavadoc("""
+                        Logs every transition to {@code StateMachine/<name>/transitions} as a {@link Transition} struct. The names
+                        state ids refer to go to {@code StateMachine/<name>/stateNames}, one entry per state in id order, logged
+                        when the state is first seen. Each transition also logs the ids of the commands it scheduled to
+                        {@code StateMachine/<name>/commands}, with the name of each command logged to
+                        {@code StateMachine/<name>/commandNames} in id order. The name is the one last given to
+                        {@link #configurePublishing}.
+                        
+                        @param log the data log to write to
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(DataLog.class, "log")
+                .addCode("""
+                        var prefix = "StateMachine/" + this.name;
+                        this.transitionLog = $1T.create(log, prefix + "/transitions", $2T.struct);
+                        this.stateNamesLog = new $3T(log, prefix + "/stateNames");
+                        for(int id = 0; id < this.stateCount(); id++) {
+                            this.stateNamesLog.append(this.stateName(id));
+                        }
+                        
+                        // Command ids are only handed out while logging, so a new log starts them over
+                        this.commandsLog = new $4T(log, prefix + "/commands");
+                        this.commandNamesLog = new $3T(log, prefix + "/commandNames");
+                        this.commandIds.clear();
+                        this.loggedCommandIds.clear();
+                        """, StructLogEntry.class, transitionName, StringLogEntry.class, IntegerArrayLogEntry.class)
+                .build();
+
+        MethodSpec logTransition = MethodSpec
+                .methodBuilder("logTransition")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "from")
+                .addParameter(int.class, "to")
+                .addParameter(int.class, "guard")
+                .addParameter(Command[].class, "commandsScheduled")
+                .addCode("""
+                        var transition = this.loggedTransition;
+                        transition.from = from;
+                        transition.to = to;
+                        transition.guard = guard;
+                        transition.commandsScheduled = commandsScheduled.length;
+                        this.transitionLog.append(transition);
+                        this.commandsLog.append(this.commandIds(commandsScheduled));
+                        """)
+                .build();
+
+        MethodSpec commandIdsMethod = MethodSpec
+                .methodBuilder("commandIds")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(Command[].class, "commands")
+                .returns(long[].class)
+                .addCode("""
+                        if(commands.length == 0) {
+                            return NO_COMMAND_IDS;
+                        }
+                        
+                        var ids = this.loggedCommandIds.get(commands);
+                        if(ids != null) {
+                            return ids;
+                        }
+                        
+                        ids = new long[commands.length];
+                        for(int i = 0; i < commands.length; i++) {
+                            var id = this.commandIds.get(commands[i]);
+                            if(id == null) {
+                                id = this.commandIds.size();
+                                this.commandIds.put(commands[i], id);
+                                this.commandNamesLog.append(commands[i].getName());
+                            }
+                            ids[i] = id;
+                        }
+                        
+                        this.loggedCommandIds.put(commands, ids);
+                        return ids;
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(transitionLog)
+                .addField(stateNamesLog)
+                .addField(commandsLog)
+                .addField(commandNamesLog)
+                .addField(commandIds)
+                .addField(loggedCommandIds)
+                .addField(noCommands)
+                .addField(noCommandIds)
+                .addField(loggedTransition)
+                .addMethod(enableTransitionLoggingDefault)
+                .addMethod(enableTransitionLogging)
+                .addMethod(logTransition)
+                .addMethod(commandIdsMethod)
+                .addType(transitionBuilder.build())
+                .addType(transitionStruct);
+
+        FieldSpec flightRecorder = FieldSpec
+                .builder(FlightRecorder.class, "flightRecorder")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec flightRecorderId = FieldSpec
+                .builder(int.class, "flightRecorderId")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec enableFlightRecorder = MethodSpec
+                .methodBuilder("enableFlightRecorder")
+                .addJavadoc("""
+                        Records every transition into the given flight recorder, under the name last given to
+                        {@link #configurePublishing}. State ids follow the same numbering as {@link $T#ID}.
+                        
+                        @param recorder the flight recorder to write to
+                        """, StatePublishing.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(FlightRecorder.class, "recorder")
+                .addCode("""
+                        this.flightRecorderId = recorder.registerMachine(this.name);
+                        this.flightRecorder = recorder;
+                        
+                        for(int id = 0; id < this.stateCount(); id++) {
+                            recorder.registerState(this.flightRecorderId, id, this.stateName(id));
+                        }
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(flightRecorder)
+                .addField(flightRecorderId)
+                .addMethod(enableFlightRecorder);
+    }
+
+    /**
+     * Every guard is evaluated through {@code evaluateGuard}, which either asks the guard and notes down which ones
+     * fired, or, while replaying, answers from the recording without calling the guard at all. Guards are identified
+     * by their registration order, the same ids used by transition logging.
+     */
+    private void addGuardRecording(TypeSpec.Builder typeBuilder) {
+        FieldSpec guardRecording = FieldSpec
+                .builder(GuardRecording.class, "guardRecording")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec guardReplay = FieldSpec
+                .builder(GuardRecording.Player.class, "guardReplay")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec recordGuards = MethodSpec
+                .methodBuilder("recordGuards")
+                .addJavadoc("""
+                        Appends a tick to the given recording every time this state machine is polled, noting which guards
+                        fired and the driver station mode, along with every event passed to {@code fire}. Events fired by
+                        enter and exit callbacks aren't recorded, since the callbacks run again during a replay. Pass null
+                        to stop recording.
+
+                        @param recording the recording to append to
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(GuardRecording.class, "recording")
+                .addStatement("this.guardRecording = recording")
+                .build();
+
+        MethodSpec replay = MethodSpec
+                .methodBuilder("replay")
+                .addJavadoc("""
+                        Polls this state machine once for every tick in the recording, using the recorded guard results and
+                        driver station mode instead of calling the guards or reading the driver station. Recorded events are
+                        fired again at the start of the poll that followed them. Transition commands are not scheduled while
+                        replaying, everything else behaves as it would on the robot, including fail loudly transitions
+                        throwing.
+                        <p>
+                        The same transitions need to have been registered in the same order as when the recording was made.
+
+                        @param recording the recording to replay
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(GuardRecording.class, "recording")
+                .addCode("""
+                        var player = recording.player();
+                        var previousRecording = this.guardRecording;
+                        this.guardRecording = null;
+                        this.guardReplay = player;
+
+                        try {
+                            while(player.next()) {
+                                // The mode comes from the recording, there's no need to read the driver station
+                                this.poll(0);
+                            }
+                        
+                            for(int i = 0; i < player.trailingEventCount(); i++) {
+                                this.fire(this.eventsById.get(player.trailingEvent(i)));
+                            }
+                        } finally {
+                            this.guardReplay = null;
+                            this.guardRecording = previousRecording;
+                        }
+                        """)
+                .build();
+
+        MethodSpec replayEvents = MethodSpec
+                .methodBuilder("replayEvents")
+                .addModifiers(Modifier.PRIVATE)
+                .addCode("""
+                        var player = this.guardReplay;
+                        for(int i = 0; i < player.eventCount(); i++) {
+                            this.fire(this.eventsById.get(player.event(i)));
+                        }
+                        """)
+                .build();
+
+        MethodSpec evaluateGuard = MethodSpec
+                .methodBuilder("evaluateGuard")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(BooleanSupplier.class, "guard")
+                .addParameter(int.class, "guardId")
+                .returns(boolean.class)
+                .addCode("""
+                        if(this.guardReplay != null) {
+                            return this.guardReplay.fired(guardId);
+                        }
+
+                        var schedules = this.guardSchedules;
+                        var schedule = schedules != null && guardId < schedules.length ? schedules[guardId] : null;
+
+                        boolean fired;
+                        if(schedule != null && !schedule.due(this.pollCount)) {
+                            fired = schedule.result();
+                        } else {
+                            if(this.metrics != null) {
+                                this.metrics.recordGuardEvaluation();
+                            }
+
+                            fired = guard.getAsBoolean();
+                            if(schedule != null) {
+                                schedule.update(fired);
+                            }
+                        }
+
+                        var debounce = this.guardDebounceMicros;
+                        if(debounce != null && guardId < debounce.length) {
+                            fired = this.filterGuard(guardId, fired);
+                        }
+
+                        if(fired && this.guardRecording != null) {
+                            this.guardRecording.fired(guardId);
+                        }
+
+                        return fired;
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(guardRecording)
+                .addField(guardReplay)
+                .addMethod(recordGuards)
+                .addMethod(replayEvents)
+                .addMethod(replay)
+                .addMethod(evaluateGuard);
+    }
+
+    /**
+     * Events skip the guards entirely. Enum machines keep one array of target ordinals per event, indexed by the from
+     * ordinal, so firing is a map lookup and an array read. Record machines keep the options each event has from the
+     * current sub states with the rest of the transition caches, and resolve them the same way fired guards are.
+     */
+    private void addEventDispatch(TypeSpec.Builder typeBuilder) {
+        MethodSpec.Builder fire = MethodSpec
+                .methodBuilder("fire")
+                .addJavadoc("""
+                        Immediately takes the transition registered with {@code transitionOn} for this event from the current
+                        state, without waiting for the next poll. Call it from the same thread that polls the state machine,
+                        never from inside a guard.
+
+                        @param event the event that happened
+                        @return true if the event caused a transition
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Object.class, "event")
+                .returns(boolean.class)
+                .addCode("""
+                        if(this.guardRecording != null && this.callbackDepth == 0) {
+                            var eventId = this.eventIds.get(event);
+                            if(eventId != null) {
+                                this.guardRecording.event(eventId);
+                            }
+                        }
+                        
+                        """);
+
+        // Events are numbered in the order they're first registered, which is how recordings refer to them
+        FieldSpec eventIds = FieldSpec
+                .builder(ParameterizedTypeName.get(Map.class, Object.class, Integer.class), "eventIds")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", HashMap.class)
+                .build();
+
+        FieldSpec eventsById = FieldSpec
+                .builder(ParameterizedTypeName.get(List.class, Object.class), "eventsById")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", ArrayList.class)
+                .build();
+
+        // Enter and exit callbacks run again during a replay, so anything they fire isn't recorded
+        FieldSpec callbackDepth = FieldSpec
+                .builder(int.class, "callbackDepth")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec registerEvent = MethodSpec
+                .methodBuilder("registerEvent")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(Object.class, "event")
+                .addCode("""
+                        if(!this.eventIds.containsKey(event)) {
+                            this.eventIds.put(event, this.eventsById.size());
+                            this.eventsById.add(event);
+                        }
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(eventIds)
+                .addField(eventsById)
+                .addField(callbackDepth)
+                .addMethod(registerEvent);
+
+        if (validator instanceof EnumValidator) {
+            FieldSpec eventTargets = FieldSpec
+                    .builder(ParameterizedTypeName.get(Map.class, Object.class, int[].class), "eventTargets")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T<>()", HashMap.class)
+                    .build();
+
+            fire.addCode("""
+                    var targets = this.eventTargets.get(event);
+                    if(targets == null) {
+                        return false;
+                    }
+
+                    int nextState = targets[this.currentState.ordinal()];
+                    if(nextState == -1) {
+                        return false;
+                    }
+
+                    this.firingGuard = -1;
+                    this.updateState(STATES[nextState]);
+                    return true;
+                    """);
+
+            typeBuilder.addField(eventTargets);
+        } else {
+            var eventTransitionsType = ParameterizedTypeName.get(
+                    ClassName.get(Map.class),
+                    ClassName.get(Object.class),
+                    ParameterizedTypeName.get(
+                            ClassName.get(Map.class),
+                            stateDataName,
+                            validator.pairClassName()
+                    )
+            );
+
+            FieldSpec eventTransitions = FieldSpec
+                    .builder(eventTransitionsType, "eventTransitions")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T<>()", HashMap.class)
+                    .build();
+
+            // Indexed by event id, the transitions each event can take from the current sub states along with their slots
+            FieldSpec eventOptions = FieldSpec
+                    .builder(ArrayTypeName.of(ArrayTypeName.of(validator.pairClassName())), "eventOptions")
+                    .addModifiers(Modifier.PRIVATE)
+                    .initializer("new $T[0][]", validator.pairClassName())
+                    .build();
+
+            FieldSpec eventOptionSlots = FieldSpec
+                    .builder(int[][].class, "eventOptionSlots")
+                    .addModifiers(Modifier.PRIVATE)
+                    .initializer("new int[0][]")
+                    .build();
+
+            MethodSpec regenerateEventCache = MethodSpec
+                    .methodBuilder("regenerateEventCache")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addCode("""
+                            this.eventOptions = new $1T[this.eventsById.size()][];
+                            this.eventOptionSlots = new int[this.eventsById.size()][];
+                            
+                            var options = new $2T<$1T>();
+                            for(int eventId = 0; eventId < this.eventsById.size(); eventId++) {
+                                var transitions = this.eventTransitions.get(this.eventsById.get(eventId));
+                            
+                                options.clear();
+                                for(var state : this.currentSubData) {
+                                    var option = transitions.get(state);
+                                    if(option != null) {
+                                        options.add(option);
+                                    }
+                                }
+                            
+                                if(options.isEmpty()) {
+                                    continue;
+                                }
+                            
+                                var slots = new int[options.size()];
+                                for(int i = 0; i < slots.length; i++) {
+                                    slots[i] = this.fromSlots.get(options.get(i).a());
+                                }
+                            
+                                this.eventOptions[eventId] = options.toArray(new $1T[0]);
+                                this.eventOptionSlots[eventId] = slots;
+                            }
+                            """, validator.pairClassName(), ArrayList.class)
+                    .build();
+
+            fire.addCode("""
+                    var eventId = this.eventIds.get(event);
+                    if(eventId == null || eventId >= this.eventOptions.length || this.eventOptions[eventId] == null) {
+                        return false;
+                    }
+
+                    var options = this.eventOptions[eventId];
+                    var slots = this.eventOptionSlots[eventId];
+                    this.possibleOptions.clear();
+                    for(int i = 0; i < options.length; i++) {
+                        this.addPossibleOption(options[i], -1, slots[i]);
+                    }
+
+                    var nextState = this.resolveOptions();
+                    this.firingGuard = -1;
+                    if(nextState == null) {
+                        return false;
+                    }
+
+                    this.updateState(nextState);
+                    return true;
+                    """);
+
+            typeBuilder
+                    .addField(eventTransitions)
+                    .addField(eventOptions)
+                    .addField(eventOptionSlots)
+                    .addMethod(regenerateEventCache);
+        }
+
+        typeBuilder.addMethod(fire.build());
+    }
+
+    /**
+     * The state machine itself is only ever touched by the polling thread. Other threads hand their work over through a
+     * lock-free queue that's drained at the start of each poll, which costs a single volatile read when it's empty.
+     */
+    private void addPendingActions(TypeSpec.Builder typeBuilder) {
+        FieldSpec pendingActions = FieldSpec
+                .builder(ParameterizedTypeName.get(ConcurrentLinkedQueue.class, Runnable.class), "pendingActions")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", ConcurrentLinkedQueue.class)
+                .build();
+
+        MethodSpec runOnNextPoll = MethodSpec
+                .methodBuilder("runOnNextPoll")
+                .addJavadoc("""
+                        Runs the action on the polling thread, at the start of the next poll. Use this to register transitions
+                        or request a transition from another thread, since everything except {@link #currentState()} has to
+                        happen on the polling thread. Safe to call from any thread.
+
+                        @param action the work to do on the polling thread
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Runnable.class, "action")
+                .addStatement("this.pendingActions.add(action)")
+                .build();
+
+        MethodSpec fireOnNextPoll = MethodSpec
+                .methodBuilder("fireOnNextPoll")
+                .addJavadoc("""
+                        Fires the event on the polling thread, at the start of the next poll. Safe to call from any thread.
+
+                        @param event the event that happened
+                        """)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Object.class, "event")
+                .addStatement("this.pendingActions.add(() -> this.fire(event))")
+                .build();
+
+        MethodSpec runPendingActions = MethodSpec
+                .methodBuilder("runPendingActions")
+                .addModifiers(Modifier.PRIVATE)
+                .addCode("""
+                        Runnable action;
+                        while((action = this.pendingActions.poll()) != null) {
+                            action.run();
+                        }
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(pendingActions)
+                .addMethod(runOnNextPoll)
+                .addMethod(fireOnNextPoll)
+                .addMethod(runPendingActions);
+    }
+
+    /**
+     * Timeouts live on the shared {@link TimerWheel}, armed and cancelled by the enter and exit callbacks of their from
+     * state. Polling moves the wheel forward once, and the guard only reads whether its timeout expired.
+     */
+    private void addTimeouts(TypeSpec.Builder typeBuilder) {
+        FieldSpec stateEnteredMicros = FieldSpec
+                .builder(long.class, "stateEnteredMicros")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("$T.getFPGATime()", RobotController.class)
+                .build();
+
+        FieldSpec timeoutCount = FieldSpec
+                .builder(int.class, "timeoutCount")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec timeInState = MethodSpec
+                .methodBuilder("timeInState")
+                .addJavadoc("@return how many seconds ago the state machine last changed state, read from the FPGA timestamp\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(double.class)
+                .addStatement("return ($T.getFPGATime() - this.stateEnteredMicros) / 1e6", RobotController.class)
+                .build();
+
+        CodeBlock stateActive = validator instanceof EnumValidator
+                ? CodeBlock.of("this.currentState == state")
+                : CodeBlock.of("this.currentSubData.contains(state)");
+
+        MethodSpec createTimeout = MethodSpec
+                .methodBuilder("createTimeout")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(stateDataName, "state")
+                .addParameter(Duration.class, "delay")
+                .returns(BooleanSupplier.class)
+                .addCode("""
+                                var timeout = $1T.shared().timeout(delay);
+                                this.addStateCallback(state, () -> timeout.arm(this.stateEnteredMicros), true);
+                                this.addStateCallback(state, timeout::cancel, false);
+                                this.timeoutCount++;
+                                
+                                if($3L) {
+                                    timeout.arm($2T.getFPGATime());
+                                }
+                                
+                                return timeout;
+                                """,
+                        TimerWheel.class,
+                        RobotController.class,
+                        stateActive)
+                .build();
+
+        typeBuilder
+                .addField(stateEnteredMicros)
+                .addField(timeoutCount)
+                .addMethod(timeInState)
+                .addMethod(createTimeout);
+    }
+
+    /**
+     * Enter and exit callbacks are pushed from {@code updateState}. Enums keep them by ordinal. Records track every
+     * partial state that has a trigger or callback in a slot, and only check whether those are still active when a
+     * transition happens, so triggers read a boolean instead of hashing a state on every loop.
+     */
+    private void addStateCallbacks(TypeSpec.Builder typeBuilder) {
+        var callbacksType = ArrayTypeName.of(ArrayTypeName.of(Runnable.class));
+
+        MethodSpec.Builder addStateCallback = MethodSpec
+                .methodBuilder("addStateCallback")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(stateDataName, "state")
+                .addParameter(Runnable.class, "action")
+                .addParameter(boolean.class, "enter");
+
+        if (validator instanceof EnumValidator) {
+            FieldSpec enterCallbacks = FieldSpec
+                    .builder(callbacksType, "enterCallbacks")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T[STATES.length][]", Runnable.class)
+                    .build();
+
+            FieldSpec exitCallbacks = FieldSpec
+                    .builder(callbacksType, "exitCallbacks")
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T[STATES.length][]", Runnable.class)
+                    .build();
+
+            addStateCallback.addCode("""
+                    var callbacks = enter ? this.enterCallbacks : this.exitCallbacks;
+                    int index = state.ordinal();
+                    
+                    var actions = callbacks[index];
+                    if(actions == null) {
+                        actions = new $1T[] { action };
+                    } else {
+                        actions = $2T.copyOf(actions, actions.length + 1);
+                        actions[actions.length - 1] = action;
+                    }
+                    
+                    callbacks[index] = actions;
+                    """, Runnable.class, Arrays.class);
+
+            // The state whose enter callbacks ran last, or null while its exit callbacks are running
+            FieldSpec callbackState = FieldSpec
+                    .builder(stateDataName, "callbackState")
+                    .addModifiers(Modifier.PRIVATE)
+                    .build();
+
+            FieldSpec callbackRuns = FieldSpec
+                    .builder(int.class, "callbackRuns")
+                    .addModifiers(Modifier.PRIVATE)
+                    .build();
+
+            MethodSpec runStateCallbacks = MethodSpec
+                    .methodBuilder("runStateCallbacks")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(stateDataName, "previousState")
+                    .addParameter(stateDataName, "nextState")
+                    .addComment("A callback can transition the state machine again, which runs the callbacks for that transition")
+                    .addComment("itself. Whatever is left over here is out of date by then, and every exit still follows an enter.")
+                    .addCode("""
+                            int run = ++this.callbackRuns;
+                            
+                            if(this.callbackState == previousState) {
+                                this.callbackState = null;
+                                var exits = this.exitCallbacks[previousState.ordinal()];
+                                if(exits != null) {
+                                    for(var action : exits) {
+                                        action.run();
+                                        if(this.callbackRuns != run) {
+                                            return;
+                                        }
+                                    }
+                                }
+                            }
+                            
+                            this.callbackState = nextState;
+                            var enters = this.enterCallbacks[nextState.ordinal()];
+                            if(enters != null) {
+                                for(var action : enters) {
+                                    action.run();
+                                    if(this.callbackRuns != run) {
+                                        return;
+                                    }
+                                }
+                            }
+                            """)
+                    .build();
+
+            typeBuilder
+                    .addField(enterCallbacks)
+                    .addField(exitCallbacks)
+                    .addField(callbackState)
+                    .addField(callbackRuns)
+                    .addMethod(addStateCallback.build())
+                    .addMethod(runStateCallbacks);
+            return;
+        }
+
+        FieldSpec watchedStates = FieldSpec
+                .builder(ArrayTypeName.of(stateDataName), "watchedStates")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T[0]", stateDataName)
+                .build();
+
+        FieldSpec watchedActive = FieldSpec
+                .builder(boolean[].class, "watchedActive")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new boolean[0]")
+                .build();
+
+        FieldSpec watchedEnter = FieldSpec
+                .builder(callbacksType, "watchedEnter")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T[0][]", Runnable.class)
+                .build();
+
+        FieldSpec watchedExit = FieldSpec
+                .builder(callbacksType, "watchedExit")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T[0][]", Runnable.class)
+                .build();
+
+        MethodSpec watchState = MethodSpec
+                .methodBuilder("watchState")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(stateDataName, "state")
+                .returns(int.class)
+                .addCode("""
+                        for(int i = 0; i < this.watchedStates.length; i++) {
+                            if(this.watchedStates[i] == state) {
+                                return i;
+                            }
+                        }
+                        
+                        int slot = this.watchedStates.length;
+                        this.watchedStates = $1T.copyOf(this.watchedStates, slot + 1);
+                        this.watchedActive = $1T.copyOf(this.watchedActive, slot + 1);
+                        this.watchedEnter = $1T.copyOf(this.watchedEnter, slot + 1);
+                        this.watchedExit = $1T.copyOf(this.watchedExit, slot + 1);
+                        
+                        this.watchedStates[slot] = state;
+                        this.watchedActive[slot] = this.currentSubData.contains(state);
+                        this.watchedEnter[slot] = new $2T[0];
+                        this.watchedExit[slot] = new $2T[0];
+                        return slot;
+                        """, Arrays.class, Runnable.class)
+                .build();
+
+        addStateCallback.addCode("""
+                var canonicalState = this.intern(state);
+                this.verifyFromStateEnabled(canonicalState);
+                
+                int slot = this.watchState(canonicalState);
+                var callbacks = enter ? this.watchedEnter : this.watchedExit;
+                callbacks[slot] = $1T.copyOf(callbacks[slot], callbacks[slot].length + 1);
+                callbacks[slot][callbacks[slot].length - 1] = action;
+                """, Arrays.class);
+
+        // One scratch array per level of nested transitions, so an update started from a callback doesn't overwrite the
+        // slots of the update that ran the callback
+        FieldSpec changedSlots = FieldSpec
+                .builder(int[][].class, "changedSlots")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new int[0][]")
+                .build();
+
+        MethodSpec updateWatchedStates = MethodSpec
+                .methodBuilder("updateWatchedStates")
+                .addModifiers(Modifier.PRIVATE)
+                .addComment("A callback can transition the state machine again, which runs its own update before this one is done.")
+                .addComment("The slots that changed are kept in this depth's own scratch array, and each one is checked against the")
+                .addComment("current state right before its callbacks run, so nothing runs for a state that was already left or")
+                .addComment("entered again in the meantime.")
+                .addCode("""
+                        int depth = this.callbackDepth;
+                        if(depth >= this.changedSlots.length) {
+                            this.changedSlots = $1T.copyOf(this.changedSlots, depth + 1);
+                        }
+                        
+                        var changed = this.changedSlots[depth];
+                        if(changed == null || changed.length < this.watchedStates.length) {
+                            changed = new int[this.watchedStates.length];
+                            this.changedSlots[depth] = changed;
+                        }
+                        
+                        int changedCount = 0;
+                        for(int i = 0; i < this.watchedStates.length; i++) {
+                            if(this.currentSubData.contains(this.watchedStates[i]) != this.watchedActive[i]) {
+                                changed[changedCount++] = i;
+                            }
+                        }
+                        
+                        for(int c = 0; c < changedCount; c++) {
+                            int i = changed[c];
+                            if(!this.watchedActive[i] || this.currentSubData.contains(this.watchedStates[i])) {
+                                continue;
+                            }
+                        
+                            this.watchedActive[i] = false;
+                            for(var action : this.watchedExit[i]) {
+                                action.run();
+                                if(this.watchedActive[i]) {
+                                    break;
+                                }
+                            }
+                        }
+                        
+                        for(int c = 0; c < changedCount; c++) {
+                            int i = changed[c];
+                            if(this.watchedActive[i] || !this.currentSubData.contains(this.watchedStates[i])) {
+                                continue;
+                            }
+                        
+                            this.watchedActive[i] = true;
+                            for(var action : this.watchedEnter[i]) {
+                                action.run();
+                                if(!this.watchedActive[i]) {
+                                    break;
+                                }
+                            }
+                        }
+                        """, Arrays.class)
+                .build();
+
+        typeBuilder
+                .addField(changedSlots)
+                .addField(watchedStates)
+                .addField(watchedActive)
+                .addField(watchedEnter)
+                .addField(watchedExit)
+                .addMethod(watchState)
+                .addMethod(addStateCallback.build())
+                .addMethod(updateWatchedStates);
+    }
+
+    /**
+     * Guards registered with a {@link GuardRate} get a schedule, indexed by guard id. Machines that never use a rate
+     * leave the array null, so evaluating a guard only costs a null check.
+     */
+    private void addGuardRates(TypeSpec.Builder typeBuilder) {
+        FieldSpec guardSchedules = FieldSpec
+                .builder(GuardRate.Schedule[].class, "guardSchedules")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec pollCount = FieldSpec
+                .builder(long.class, "pollCount")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec setGuardRate = MethodSpec
+                .methodBuilder("setGuardRate")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guard")
+                .addParameter(GuardRate.class, "rate")
+                .addCode("""
+                        if(this.guardSchedules == null) {
+                            this.guardSchedules = new $1T.Schedule[this.guardCount];
+                        } else if(this.guardSchedules.length <= guard) {
+                            this.guardSchedules = $2T.copyOf(this.guardSchedules, this.guardCount);
+                        }
+
+                        this.guardSchedules[guard] = rate.schedule(guard);
+                        this.trackGuardRestarts();
+                        """, GuardRate.class, Arrays.class)
+                .build();
+
+        typeBuilder
+                .addField(guardSchedules)
+                .addField(pollCount)
+                .addMethod(setGuardRate);
+    }
+
+    /**
+     * Async guards, rate schedules and guard filters all hold on to something measured while the state a guard leaves
+     * from was active, which shouldn't carry over to the next visit to that state. Instead of tracking every from state,
+     * a transition marks the guards of the state it leaves with a new epoch, and any guard of the next state that wasn't
+     * marked has just become active again and is restarted. Guards whose from state stays active, like a record field
+     * that didn't change, keep what they have. Machines that use none of these leave {@code guardEpochs} null.
+     */
+    private void addGuardRestarts(TypeSpec.Builder typeBuilder) {
+        FieldSpec guardEpochs = FieldSpec
+                .builder(int[].class, "guardEpochs")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec guardEpoch = FieldSpec
+                .builder(int.class, "guardEpoch")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        // Indexed by guard id, null where the guard isn't an AsyncGuard
+        FieldSpec asyncGuards = FieldSpec
+                .builder(AsyncGuard[].class, "asyncGuards")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec trackGuardRestarts = MethodSpec
+                .methodBuilder("trackGuardRestarts")
+                .addModifiers(Modifier.PRIVATE)
+                .addCode("""
+                        if(this.guardEpochs == null) {
+                            this.guardEpochs = new int[this.guardCount];
+                        } else if(this.guardEpochs.length < this.guardCount) {
+                            this.guardEpochs = $1T.copyOf(this.guardEpochs, this.guardCount);
+                        }
+                        """, Arrays.class)
+                .build();
+
+        MethodSpec trackAsyncGuard = MethodSpec
+                .methodBuilder("trackAsyncGuard")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guardId")
+                .addParameter(BooleanSupplier.class, "guard")
+                .addCode("""
+                        if(!(guard instanceof $1T asyncGuard)) {
+                            return;
+                        }
+
+                        if(this.asyncGuards == null) {
+                            this.asyncGuards = new $1T[this.guardCount];
+                        } else if(this.asyncGuards.length <= guardId) {
+                            this.asyncGuards = $2T.copyOf(this.asyncGuards, this.guardCount);
+                        }
+
+                        this.asyncGuards[guardId] = asyncGuard;
+                        this.trackGuardRestarts();
+                        """, AsyncGuard.class, Arrays.class)
+                .build();
+
+        MethodSpec restartGuards = MethodSpec
+                .methodBuilder("restartGuards")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int[].class, "previousGuardIds")
+                .addParameter(int[].class, "nextGuardIds")
+                .addJavadoc("@param previousGuardIds the guards of the state that was left, or null when it was left and entered\n")
+                .addJavadoc("again\n")
+                .addJavadoc("@param nextGuardIds the guards of the state that was entered\n")
+                .addCode("""
+                        var epochs = this.guardEpochs;
+                        if(epochs == null) {
+                            return;
+                        }
+
+                        int epoch = ++this.guardEpoch;
+                        if(previousGuardIds != null) {
+                            for(int guardId : previousGuardIds) {
+                                if(guardId < epochs.length) {
+                                    epochs[guardId] = epoch;
+                                }
+                            }
+                        }
+
+                        for(int guardId : nextGuardIds) {
+                            if(guardId < epochs.length && epochs[guardId] != epoch) {
+                                this.restartGuard(guardId);
+                            }
+                        }
+                        """)
+                .build();
+
+        MethodSpec restartGuard = MethodSpec
+                .methodBuilder("restartGuard")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guardId")
+                .addCode("""
+                        var asyncGuards = this.asyncGuards;
+                        if(asyncGuards != null && guardId < asyncGuards.length && asyncGuards[guardId] != null) {
+                            asyncGuards[guardId].invalidate();
+                        }
+
+                        var schedules = this.guardSchedules;
+                        if(schedules != null && guardId < schedules.length && schedules[guardId] != null) {
+                            schedules[guardId].invalidate();
+                        }
+
+                        var trueSince = this.guardTrueSinceMicros;
+                        if(trueSince != null && guardId < trueSince.length) {
+                            trueSince[guardId] = NOT_TRUE;
+                            this.guardActiveSinceMicros[guardId] = this.stateEnteredMicros;
+                        }
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(guardEpochs)
+                .addField(guardEpoch)
+                .addField(asyncGuards)
+                .addMethod(trackGuardRestarts)
+                .addMethod(trackAsyncGuard)
+                .addMethod(restartGuards)
+                .addMethod(restartGuard);
+    }
+
+    /**
+     * Priorities are kept by guard id, and null until one is set. The guards the state machine evaluates are kept sorted
+     * by priority at registration time, with a stable sort so equal priorities keep their registration order, which
+     * lets {@code getNextState} stop as soon as it reaches a guard below one that already fired.
+     */
+    private void addGuardPriorities(TypeSpec.Builder typeBuilder) {
+        FieldSpec guardPriorities = FieldSpec
+                .builder(int[].class, "guardPriorities")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec guardPriority = MethodSpec
+                .methodBuilder("guardPriority")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guardId")
+                .returns(int.class)
+                .addCode("""
+                        var priorities = this.guardPriorities;
+                        return priorities == null || guardId >= priorities.length ? 0 : priorities[guardId];
+                        """)
+                .build();
+
+        MethodSpec.Builder setGuardPriority = MethodSpec
+                .methodBuilder("setGuardPriority")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guard")
+                .addParameter(int.class, "priority")
+                .addCode("""
+                        if(this.guardPriorities == null) {
+                            this.guardPriorities = new int[this.guardCount];
+                        } else if(this.guardPriorities.length <= guard) {
+                            this.guardPriorities = $1T.copyOf(this.guardPriorities, this.guardCount);
+                        }
+                        
+                        this.guardPriorities[guard] = priority;
+                        
+                        """, Arrays.class);
+
+        if (validator instanceof EnumValidator) {
+            setGuardPriority.addCode("""
+                    for(int from = 0; from < STATES.length; from++) {
+                        this.sortGuardsByPriority(from);
+                    }
+                    """);
+
+            MethodSpec sortGuardsByPriority = MethodSpec
+                    .methodBuilder("sortGuardsByPriority")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(int.class, "from")
+                    .addCode("""
+                            if(this.guardPriorities == null) {
+                                return;
+                            }
+                            
+                            var guards = this.transitionWhenGuards[from];
+                            var targets = this.transitionWhenTargets[from];
+                            var guardIds = this.transitionWhenGuardIds[from];
+                            
+                            // Insertion sort, the rows are short and it keeps equal priorities in registration order
+                            for(int i = 1; i < guardIds.length; i++) {
+                                var guard = guards[i];
+                                int target = targets[i];
+                                int guardId = guardIds[i];
+                                int priority = this.guardPriority(guardId);
+                            
+                                int j = i - 1;
+                                while(j >= 0 && this.guardPriority(guardIds[j]) < priority) {
+                                    guards[j + 1] = guards[j];
+                                    targets[j + 1] = targets[j];
+                                    guardIds[j + 1] = guardIds[j];
+                                    j--;
+                                }
+                            
+                                guards[j + 1] = guard;
+                                targets[j + 1] = target;
+                                guardIds[j + 1] = guardId;
+                            }
+                            """)
+                    .build();
+
+            typeBuilder.addMethod(sortGuardsByPriority);
+        } else {
+            setGuardPriority.addCode("""
+                    this.transitionCaches.clear();
+                    this.regenerateTransitionWhenCache();
+                    """);
+
+            MethodSpec sortTransitionWhenCache = MethodSpec
+                    .methodBuilder("sortTransitionWhenCache")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addCode("""
+                            if(this.guardPriorities == null) {
+                                return;
+                            }
+                            
+                            var suppliers = this.transitionWhenSuppliers;
+                            var options = this.transitionWhenOptions;
+                            var optionSlots = this.transitionWhenOptionSlots;
+                            var guardIds = this.transitionWhenGuardIds;
+                            
+                            // Insertion sort, the cache is rebuilt rarely and it keeps equal priorities in order
+                            for(int i = 1; i < guardIds.length; i++) {
+                                var supplier = suppliers[i];
+                                var option = options[i];
+                                var slots = optionSlots[i];
+                                int guardId = guardIds[i];
+                                int priority = this.guardPriority(guardId);
+                            
+                                int j = i - 1;
+                                while(j >= 0 && this.guardPriority(guardIds[j]) < priority) {
+                                    suppliers[j + 1] = suppliers[j];
+                                    options[j + 1] = options[j];
+                                    optionSlots[j + 1] = optionSlots[j];
+                                    guardIds[j + 1] = guardIds[j];
+                                    j--;
+                                }
+                            
+                                suppliers[j + 1] = supplier;
+                                options[j + 1] = option;
+                                optionSlots[j + 1] = slots;
+                                guardIds[j + 1] = guardId;
+                            }
+                            """)
+                    .build();
+
+            typeBuilder.addMethod(sortTransitionWhenCache);
+        }
+
+        typeBuilder
+                .addField(guardPriorities)
+                .addMethod(guardPriority)
+                .addMethod(setGuardPriority.build());
+    }
+
+    /**
+     * Edge guards need their supplier's value from the last poll, whether or not their from state was active, so every
+     * edge supplier is sampled once per poll into a bitset indexed by slot. The guards handed to {@code transitionWhen}
+     * only read the rising or falling bit for their slot. Suppliers used by several edge guards share a slot. A slot's
+     * first sample only sets its previous value, so registering a guard never calls its supplier.
+     */
+    private void addEdgeGuards(TypeSpec.Builder typeBuilder) {
+        FieldSpec edgeSuppliers = FieldSpec
+                .builder(BooleanSupplier[].class, "edgeSuppliers")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new $T[0]", BooleanSupplier.class)
+                .build();
+
+        FieldSpec edgeSlots = FieldSpec
+                .builder(ParameterizedTypeName.get(Map.class, BooleanSupplier.class, Integer.class), "edgeSlots")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", IdentityHashMap.class)
+                .build();
+
+        FieldSpec edgePrevious = FieldSpec
+                .builder(long[].class, "edgePrevious")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new long[0]")
+                .build();
+
+        FieldSpec edgeSeeded = FieldSpec
+                .builder(long[].class, "edgeSeeded")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new long[0]")
+                .build();
+
+        FieldSpec edgeRose = FieldSpec
+                .builder(long[].class, "edgeRose")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new long[0]")
+                .build();
+
+        FieldSpec edgeFell = FieldSpec
+                .builder(long[].class, "edgeFell")
+                .addModifiers(Modifier.PRIVATE)
+                .initializer("new long[0]")
+                .build();
+
+        MethodSpec edgeGuard = MethodSpec
+                .methodBuilder("edgeGuard")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(BooleanSupplier.class, "supplier")
+                .addParameter(boolean.class, "rising")
+                .returns(BooleanSupplier.class)
+                .addCode("""
+                        var existingSlot = this.edgeSlots.get(supplier);
+                        int slot = existingSlot == null ? this.edgeSuppliers.length : existingSlot;
+                        int word = slot >>> 6;
+                        long bit = 1L << slot;
+                        
+                        if(existingSlot == null) {
+                            this.edgeSuppliers = $1T.copyOf(this.edgeSuppliers, slot + 1);
+                            this.edgeSuppliers[slot] = supplier;
+                            this.edgeSlots.put(supplier, slot);
+                        
+                            if(this.edgePrevious.length <= word) {
+                                this.edgePrevious = $1T.copyOf(this.edgePrevious, word + 1);
+                                this.edgeSeeded = $1T.copyOf(this.edgeSeeded, word + 1);
+                                this.edgeRose = $1T.copyOf(this.edgeRose, word + 1);
+                                this.edgeFell = $1T.copyOf(this.edgeFell, word + 1);
+                            }
+                        }
+                        
+                        if(rising) {
+                            return () -> (this.edgeRose[word] & bit) != 0;
+                        }
+                        
+                        return () -> (this.edgeFell[word] & bit) != 0;
+                        """, Arrays.class)
+                .build();
+
+        MethodSpec sampleEdgeGuards = MethodSpec
+                .methodBuilder("sampleEdgeGuards")
+                .addModifiers(Modifier.PRIVATE)
+                .addCode("""
+                        var suppliers = this.edgeSuppliers;
+                        
+                        for(int word = 0; word < this.edgePrevious.length; word++) {
+                            int end = Math.min(suppliers.length, (word + 1) << 6);
+                            long current = 0;
+                            long registered = 0;
+                            for(int slot = word << 6; slot < end; slot++) {
+                                registered |= 1L << slot;
+                                if(suppliers[slot].getAsBoolean()) {
+                                    current |= 1L << slot;
+                                }
+                            }
+                        
+                            // Slots sampled for the first time have nothing to compare against, so they can't have an edge yet
+                            long previous = this.edgePrevious[word];
+                            long seeded = this.edgeSeeded[word];
+                            this.edgeRose[word] = current & ~previous & seeded;
+                            this.edgeFell[word] = previous & ~current & seeded;
+                            this.edgePrevious[word] = current;
+                            this.edgeSeeded[word] = registered;
+                        }
+                        
+                        if(this.metrics != null) {
+                            this.metrics.recordGuardEvaluations(suppliers.length);
+                        }
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(edgeSuppliers)
+                .addField(edgeSlots)
+                .addField(edgePrevious)
+                .addField(edgeSeeded)
+                .addField(edgeRose)
+                .addField(edgeFell)
+                .addMethod(edgeGuard)
+                .addMethod(sampleEdgeGuards);
+    }
+
+    /**
+     * Debounce and minimum dwell are kept in primitive arrays indexed by guard id, which stay null until a guard asks
+     * for one. Filtering only needs the time a guard started reading true and the time the state it leaves from was
+     * entered, both of which are reset by {@code restartGuard}.
+     */
+    private void addGuardFilters(TypeSpec.Builder typeBuilder) {
+        FieldSpec notTrue = FieldSpec
+                .builder(long.class, "NOT_TRUE")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.MIN_VALUE", Long.class)
+                .build();
+
+        FieldSpec guardDebounceMicros = FieldSpec
+                .builder(long[].class, "guardDebounceMicros")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec guardDwellMicros = FieldSpec
+                .builder(long[].class, "guardDwellMicros")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        FieldSpec guardTrueSinceMicros = FieldSpec
+                .builder(long[].class, "guardTrueSinceMicros")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        // When the state each guard leaves from was entered, which for records isn't always the last transition
+        FieldSpec guardActiveSinceMicros = FieldSpec
+                .builder(long[].class, "guardActiveSinceMicros")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec ensureGuardFilters = MethodSpec
+                .methodBuilder("ensureGuardFilters")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guard")
+                .addParameter(Duration.class, "duration")
+                .addCode("""
+                        if(duration.isNegative()) {
+                            throw new $1T("Guard filter durations can't be negative");
+                        }
+                        
+                        if(this.guardDebounceMicros == null) {
+                            this.guardDebounceMicros = new long[this.guardCount];
+                            this.guardDwellMicros = new long[this.guardCount];
+                            this.guardTrueSinceMicros = new long[this.guardCount];
+                            this.guardActiveSinceMicros = new long[this.guardCount];
+                            $2T.fill(this.guardTrueSinceMicros, NOT_TRUE);
+                            $2T.fill(this.guardActiveSinceMicros, this.stateEnteredMicros);
+                        } else if(this.guardDebounceMicros.length <= guard) {
+                            int oldLength = this.guardTrueSinceMicros.length;
+                            this.guardDebounceMicros = $2T.copyOf(this.guardDebounceMicros, this.guardCount);
+                            this.guardDwellMicros = $2T.copyOf(this.guardDwellMicros, this.guardCount);
+                            this.guardTrueSinceMicros = $2T.copyOf(this.guardTrueSinceMicros, this.guardCount);
+                            this.guardActiveSinceMicros = $2T.copyOf(this.guardActiveSinceMicros, this.guardCount);
+                            $2T.fill(this.guardTrueSinceMicros, oldLength, this.guardCount, NOT_TRUE);
+                            $2T.fill(this.guardActiveSinceMicros, oldLength, this.guardCount, this.stateEnteredMicros);
+                        }
+                        
+                        this.trackGuardRestarts();
+                        """, IllegalArgumentException.class, Arrays.class)
+                .build();
+
+        MethodSpec setGuardDebounce = MethodSpec
+                .methodBuilder("setGuardDebounce")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guard")
+                .addParameter(Duration.class, "duration")
+                .addStatement("this.ensureGuardFilters(guard, duration)")
+                .addStatement("this.guardDebounceMicros[guard] = duration.toNanos() / 1000")
+                .build();
+
+        MethodSpec setGuardMinimumDwell = MethodSpec
+                .methodBuilder("setGuardMinimumDwell")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guard")
+                .addParameter(Duration.class, "duration")
+                .addStatement("this.ensureGuardFilters(guard, duration)")
+                .addStatement("this.guardDwellMicros[guard] = duration.toNanos() / 1000")
+                .build();
+
+        MethodSpec filterGuard = MethodSpec
+                .methodBuilder("filterGuard")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "guardId")
+                .addParameter(boolean.class, "fired")
+                .returns(boolean.class)
+                .addCode("""
+                        long debounceMicros = this.guardDebounceMicros[guardId];
+                        long dwellMicros = this.guardDwellMicros[guardId];
+                        if(debounceMicros == 0 && dwellMicros == 0) {
+                            return fired;
+                        }
+                        
+                        if(!fired) {
+                            this.guardTrueSinceMicros[guardId] = NOT_TRUE;
+                            return false;
+                        }
+                        
+                        long now = $1T.getFPGATime();
+                        if(this.guardTrueSinceMicros[guardId] == NOT_TRUE) {
+                            this.guardTrueSinceMicros[guardId] = now;
+                        }
+                        
+                        return now - this.guardTrueSinceMicros[guardId] >= debounceMicros
+                                && now - this.guardActiveSinceMicros[guardId] >= dwellMicros;
+                        """, RobotController.class)
+                .build();
+
+        MethodSpec skipGuards = MethodSpec
+                .methodBuilder("skipGuards")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int[].class, "guardIds")
+                .addParameter(int.class, "start")
+                .addComment("Guards that weren't evaluated can't be known to have stayed true, so their debounce starts over")
+                .addCode("""
+                        var trueSince = this.guardTrueSinceMicros;
+                        if(trueSince == null) {
+                            return;
+                        }
+                        
+                        for(int i = start; i < guardIds.length; i++) {
+                            if(guardIds[i] < trueSince.length) {
+                                trueSince[guardIds[i]] = NOT_TRUE;
+                            }
+                        }
+                        """)
+                .build();
+
+        typeBuilder
+                .addField(notTrue)
+                .addField(guardDebounceMicros)
+                .addField(guardDwellMicros)
+                .addField(guardTrueSinceMicros)
+                .addField(guardActiveSinceMicros)
+                .addMethod(ensureGuardFilters)
+                .addMethod(setGuardDebounce)
+                .addMethod(setGuardMinimumDwell)
+                .addMethod(filterGuard)
+                .addMethod(skipGuards);
+    }
+
+    /**
+     * Enums have a fixed, known set of states, so instead of hashing states into nested maps we lay everything out by
+     * ordinal. Guards are grouped by the state they leave from, and commands and fail loudly flags are indexed by edge
+     * ({@code from * STATES.length + to}).
+     */
+    private void addEnumTransitionTables(TypeSpec.Builder typeBuilder) {
+        FieldSpec states = FieldSpec
+                .builder(ArrayTypeName.of(stateDataName), "STATES")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.values()", stateDataName)
+                .build();
+
+        FieldSpec transitionWhenGuards = FieldSpec
+                .builder(ArrayTypeName.of(ArrayTypeName.of(BooleanSupplier.class)), "transitionWhenGuards")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T[STATES.length][0]", BooleanSupplier.class)
+                .build();
+
+        FieldSpec transitionWhenTargets = FieldSpec
+                .builder(int[][].class, "transitionWhenTargets")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new int[STATES.length][0]")
+                .build();
+
+        FieldSpec transitionWhenGuardIds = FieldSpec
+                .builder(int[][].class, "transitionWhenGuardIds")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new int[STATES.length][0]")
+                .build();
+
+        FieldSpec transitionCommands = FieldSpec
+                .builder(ArrayTypeName.of(ArrayTypeName.of(Command.class)), "transitionCommands")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T[STATES.length * STATES.length][]", Command.class)
+                .build();
+
+        FieldSpec failLoudlyEdges = FieldSpec
+                .builder(long[].class, "failLoudlyEdges")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new long[(STATES.length * STATES.length + 63) >>> 6]")
+                .build();
+
+        FieldSpec triggers = FieldSpec
+                .builder(ArrayTypeName.of(Trigger.class), "triggers")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T[STATES.length]", Trigger.class)
+                .build();
+
+        typeBuilder
+                .addField(states)
+                .addField(transitionWhenGuards)
+                .addField(transitionWhenTargets)
+                .addField(transitionWhenGuardIds)
+                .addField(transitionCommands)
+                .addField(failLoudlyEdges)
+                .addField(triggers);
+    }
 }
@@ -4,6 +4,7 @@ import bot.den.foxflow.LimitsStateTransitions;
 import bot.den.foxflow.Environment;
 import bot.den.foxflow.LimitsTypeTransitions;
 import bot.den.foxflow.Util;
+import com.palantir.javapoet.AnnotationSpec;
 import com.palantir.javapoet.ClassName;
 import com.palantir.javapoet.MethodSpec;
 import com.palantir.javapoet.ParameterizedTypeName;
@@ -81,16 +82,21 @@ public class InterfaceValidator implements Validator {
         MethodSpec canTransitionState = MethodSpec
                 .methodBuilder("canTransitionState")
                 .addAnnotation(Override.class)
+                .addAnnotation(AnnotationSpec
+                        .builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build())
                 .addModifiers(Modifier.PUBLIC)
                 .returns(boolean.class)
                 .addParameter(wrappedTypeName, "data")
                 .addCode("""
-                                Class ourClass = this.data.getClass();
-                                Class theirClass = data.data.getClass();
-                                if(ourClass.equals(theirClass) && this.data instanceof $1T transition) {
-                                    return transition.canTransitionState(data.data);
+                                Class<?> ourClass = this.data.getClass();
+                                Class<?> theirClass = data.data.getClass();
+                                if(ourClass.equals(theirClass) && this.data instanceof $1T<?> transition) {
+                                    // Both are the same class, so the other data is the type this one limits transitions to
+                                    return (($1T<Object>) transition).canTransitionState(data.data);
                                 }
-                                if(! ourClass.equals(theirClass) && this.data instanceof $2T transition) {
+                                if(! ourClass.equals(theirClass) && this.data instanceof $2T<?> transition) {
                                     return transition.canTransitionType(data.data);
                                 }
                                 return true;
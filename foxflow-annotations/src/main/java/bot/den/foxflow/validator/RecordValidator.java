@@ -14,12 +14,16 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class RecordValidator implements Validator {
+    // Field masks are ints, and the all-fields mask needs to stay positive
+    private static final int MAX_FIELDS = 31;
+
     public final List<ClassName> fieldTypes;
     public final Map<ClassName, String> fieldNameMap;
     public final Map<List<ClassName>, ClassName> fieldToInnerClass;
     public final Map<ClassName, List<ClassName>> innerClassToField;
     public final boolean robotStatePresent;
     public final List<TypeSpec> typesToWrite = new ArrayList<>();
+    public final StateMachine.Generation generation;
 
     // These contain the mapping between the class the user defined and our data class
     public final Map<ClassName, ClassName> nestedRecords = new HashMap<>();
@@ -31,14 +35,32 @@ public class RecordValidator implements Validator {
     private final ClassName wrappedTypeName;
     private final ClassName robotStateName;
     private final ClassName pairName;
+    private final ClassName maskedName;
     private final List<List<ClassName>> permutations;
 
     public RecordValidator(Environment environment) {
+        this(environment, StateMachine.Generation.PERMUTATIONS);
+    }
+
+    /**
+     * @param environment The environment pointing at the record to validate
+     * @param parentGeneration The generation strategy of the record containing this one. Nested records are generated
+     *                         linearly if either they or any record containing them asks for it.
+     */
+    private RecordValidator(Environment environment, StateMachine.Generation parentGeneration) {
         var typeElement = environment.element();
         originalTypeName = ClassName.get(typeElement);
 
+        var annotation = typeElement.getAnnotation(StateMachine.class);
+        if (parentGeneration == StateMachine.Generation.LINEAR || (annotation != null && annotation.generation() == StateMachine.Generation.LINEAR)) {
+            generation = StateMachine.Generation.LINEAR;
+        } else {
+            generation = StateMachine.Generation.PERMUTATIONS;
+        }
+
         wrappedTypeName = Util.getUniqueClassName(originalTypeName.peerClass(originalTypeName.simpleName() + "Data"));
         pairName = wrappedTypeName.nestedClass("Pair");
+        maskedName = wrappedTypeName.nestedClass("Masked");
 
         var typeUtils = environment.processingEnvironment().getTypeUtils();
 
@@ -48,6 +70,10 @@ public class RecordValidator implements Validator {
             throw new RuntimeException("An empty record isn't supported for building a state machine. Failed to build state machine for " + originalTypeName);
         }
 
+        if (recordComponents.size() > MAX_FIELDS) {
+            throw new RuntimeException("Records with more than " + MAX_FIELDS + " fields aren't supported for building a state machine. Failed to build state machine for " + originalTypeName);
+        }
+
         // Validate each enum
         var validators = recordComponents
                 .stream()
@@ -59,7 +85,7 @@ public class RecordValidator implements Validator {
                         return new EnumValidator(newEnvironment);
                     } else if (element.getKind() == ElementKind.RECORD) {
                         // Nested record, we have to go deeper!
-                        return new RecordValidator(newEnvironment);
+                        return new RecordValidator(newEnvironment, generation);
                     } else if (element.getKind() == ElementKind.INTERFACE) {
                         return new InterfaceValidator(newEnvironment);
                     } else {
@@ -127,7 +153,7 @@ public class RecordValidator implements Validator {
             fieldNameMap.put(typeName, variableName);
         }
 
-        permutations = getPermutations(fieldTypes);
+        permutations = isLinear() ? getLinearPermutations(fieldTypes) : getPermutations(fieldTypes);
 
         fieldToInnerClass = new HashMap<>();
         innerClassToField = new HashMap<>();
@@ -167,37 +193,61 @@ public class RecordValidator implements Validator {
         return permutations;
     }
 
-    private <T> List<List<T>> getPermutations(List<T> input, int length) {
+    /**
+     * The linear counterpart to {@link #getPermutations(List)}, only returning each element on its own and then the
+     * full input. E.g., ["A", "B", "C"] as input would give you:
+     * ["A"], ["B"], ["C"]
+     * ["A", "B", "C"]
+     *
+     * @param input The list of ClassName's to find the permutations of
+     * @return The single element permutations followed by the full input
+     */
+    private <T> List<List<T>> getLinearPermutations(List<T> input) {
         List<List<T>> permutations = new LinkedList<>();
 
-        int counter = 0;
-        int maxCounter = input.size() * length;
-        main_loop:
-        while (counter < maxCounter) {
-            int tempCounter = counter;
+        for (var element : input) {
+            permutations.add(List.of(element));
+        }
 
-            int lastIndex = Integer.MAX_VALUE;
-            List<T> permutation = new ArrayList<>(length);
+        if (input.size() > 1) {
+            permutations.add(input);
+        }
 
-            // From the right side to the left, we're going to fill in our counted values
-            for (int i = length - 1; i >= 0; i--) {
-                int index = tempCounter % input.size();
+        return permutations;
+    }
 
-                // If we choose a later index in our list, we'd be putting these out of order, so let's avoid this attempt
-                // and try again.
-                if (index >= lastIndex) {
-                    counter++;
-                    continue main_loop;
-                }
+    private <T> List<List<T>> getPermutations(List<T> input, int length) {
+        List<List<T>> permutations = new LinkedList<>();
 
-                permutation.add(0, input.get(index));
-                lastIndex = index;
+        // Walk the index combinations in increasing order, e.g. [0, 1], [0, 2], [1, 2] for three inputs of length two.
+        // Every combination is visited exactly once, so this stays proportional to the number of permutations we return
+        // rather than every possible arrangement of indices.
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = i;
+        }
 
-                tempCounter = tempCounter / input.size();
+        while (true) {
+            List<T> permutation = new ArrayList<>(length);
+            for (int index : indices) {
+                permutation.add(input.get(index));
             }
-
             permutations.add(permutation);
-            counter++;
+
+            // Find the rightmost index that still has room to move right
+            int i = length - 1;
+            while (i >= 0 && indices[i] == input.size() - length + i) {
+                i--;
+            }
+
+            if (i < 0) {
+                break;
+            }
+
+            indices[i]++;
+            for (int j = i + 1; j < length; j++) {
+                indices[j] = indices[j - 1] + 1;
+            }
         }
 
         return permutations;
@@ -224,7 +274,8 @@ public class RecordValidator implements Validator {
                         .map(type -> {
                             var fieldName = transformFieldName.apply(fieldNameMap.get(type));
 
-                            if (type.equals(robotStateName)) {
+                            if (type.equals(robotStateName) && !wrapNestedClasses) {
+                                // Building the user's record for the state machine constructor, which always starts disabled
                                 return CodeBlock.of("$T.DISABLED", RobotState.class);
                             } else if (wrapNestedClasses && nestedRecords.containsKey(type)) {
                                 return CodeBlock.of("$1T.fromRecord($2L)", nestedRecords.get(type), fieldName);
@@ -254,6 +305,25 @@ public class RecordValidator implements Validator {
         return emitDataClass(innerClassToField.get(innerClassName), transformFieldName);
     }
 
+    public boolean isLinear() {
+        return generation == StateMachine.Generation.LINEAR;
+    }
+
+    /**
+     * @return The generic data class used for combinations of fields that don't have a dedicated class. Only generated
+     * for linear records.
+     */
+    public ClassName maskedClassName() {
+        return maskedName;
+    }
+
+    /**
+     * @return The index each field holds in a data class field mask and in {@code field(int)}
+     */
+    public int fieldIndex(ClassName fieldType) {
+        return fieldTypes.indexOf(fieldType);
+    }
+
     @Override
     public ClassName originalTypeName() {
         return originalTypeName;
@@ -353,6 +423,16 @@ public class RecordValidator implements Validator {
                     );
                 }
 
+                if (isLinear()) {
+                    extractorMethodBuilder.addStatement(
+                            "if (data instanceof $1T m && (m.fieldMask() & 0b$2L) != 0) return ($3T) m.field($4L)",
+                            maskedName,
+                            Integer.toBinaryString(1 << fieldTypes.indexOf(entryType)),
+                            dataTypeName,
+                            fieldTypes.indexOf(entryType)
+                    );
+                }
+
                 extractorMethodBuilder.addStatement("return null");
 
                 recordInterfaceBuilder.addMethod(extractorMethodBuilder.build());
@@ -423,63 +503,102 @@ public class RecordValidator implements Validator {
             recordInterfaceBuilder.addMethod(toRecordMethod);
         }
 
-        // Make merge methods for specific concrete types
-        for (var types : permutations) {
-            ClassName concreteType = fieldToInnerClass.get(types);
-
-            MethodSpec canMergeMethod = MethodSpec
-                    .methodBuilder("canMerge")
+        // Every inner class describes which fields it holds with a bitmask, bit i being set when fieldTypes[i] is present
+        {
+            MethodSpec fieldMask = MethodSpec
+                    .methodBuilder("fieldMask")
                     .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                    .addParameter(concreteType, "data")
-                    .returns(boolean.class)
+                    .returns(int.class)
                     .build();
 
-            recordInterfaceBuilder.addMethod(canMergeMethod);
-
-            MethodSpec mergeMethod = MethodSpec
-                    .methodBuilder("merge")
+            MethodSpec field = MethodSpec
+                    .methodBuilder("field")
                     .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                    .addParameter(concreteType, "data")
-                    .returns(wrappedTypeName)
+                    .addParameter(int.class, "index")
+                    .returns(Object.class)
                     .build();
 
-            recordInterfaceBuilder.addMethod(mergeMethod);
-        }
+            MethodSpec.Builder fromFieldsBuilder = MethodSpec
+                    .methodBuilder("fromFields")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(int.class, "fieldMask")
+                    .addParameter(Object[].class, "values")
+                    .returns(wrappedTypeName)
+                    .addCode("return switch (fieldMask) {\n$>");
+
+            for (var types : permutations) {
+                CodeBlock arguments = commaSeparate(
+                        types
+                                .stream()
+                                .map(t -> CodeBlock.of("($1T) values[$2L]", dataTypeName(t), fieldTypes.indexOf(t)))
+                                .toList()
+                );
 
-        // We also need ones for the data interface
-        {
-            MethodSpec.Builder canMergeMethodBuilder = MethodSpec
+                fromFieldsBuilder.addStatement("case 0b$1L -> new $2T($3L)", Integer.toBinaryString(fieldMask(types)), fieldToInnerClass.get(types), arguments);
+            }
+
+            if (isLinear()) {
+                fromFieldsBuilder.addStatement("default -> new $T(fieldMask, values)", maskedName);
+            } else {
+                fromFieldsBuilder.addStatement("default -> throw new $T(\"No data class holds the fields \" + $T.toBinaryString(fieldMask))", IllegalArgumentException.class, Integer.class);
+            }
+
+            fromFieldsBuilder.addCode("$<};\n");
+
+            MethodSpec canMerge = MethodSpec
                     .methodBuilder("canMerge")
                     .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
                     .addParameter(wrappedTypeName, "data")
-                    .returns(boolean.class);
+                    .returns(boolean.class)
+                    .addCode("""
+                                    int commonFields = this.fieldMask() & data.fieldMask();
+                                    for (int i = 0; i < $1L; i++) {
+                                        if ((commonFields & (1 << i)) != 0 && !this.field(i).equals(data.field(i))) {
+                                            return false;
+                                        }
+                                    }
+                                    
+                                    return true;
+                                    """,
+                            fieldTypes.size())
+                    .build();
 
-            MethodSpec.Builder mergeMethodBuilder = MethodSpec
+            MethodSpec merge = MethodSpec
                     .methodBuilder("merge")
                     .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
                     .addParameter(wrappedTypeName, "data")
-                    .returns(wrappedTypeName);
-
-            for (var innerClass : innerClassToField.keySet()) {
-                canMergeMethodBuilder.addStatement("if (data instanceof $T s) return canMerge(s)", innerClass);
-                mergeMethodBuilder.addStatement("if (data instanceof $T s) return merge(s)", innerClass);
-            }
-
-            canMergeMethodBuilder.addStatement("return false");
-            mergeMethodBuilder.addStatement("return null");
-
-            recordInterfaceBuilder.addMethod(canMergeMethodBuilder.build());
+                    .returns(wrappedTypeName)
+                    .addCode("""
+                                    int ourFields = this.fieldMask();
+                                    int theirFields = data.fieldMask();
+                                    
+                                    // Fields in the data passed in win over our own
+                                    Object[] values = new Object[$1L];
+                                    for (int i = 0; i < $1L; i++) {
+                                        if ((theirFields & (1 << i)) != 0) {
+                                            values[i] = data.field(i);
+                                        } else if ((ourFields & (1 << i)) != 0) {
+                                            values[i] = this.field(i);
+                                        }
+                                    }
+                                    
+                                    return fromFields(ourFields | theirFields, values);
+                                    """,
+                            fieldTypes.size())
+                    .build();
 
-            recordInterfaceBuilder.addMethod(mergeMethodBuilder.build());
+            recordInterfaceBuilder
+                    .addMethod(fieldMask)
+                    .addMethod(field)
+                    .addMethod(fromFieldsBuilder.build())
+                    .addMethod(canMerge)
+                    .addMethod(merge);
         }
 
-        MethodSpec numElements = MethodSpec
-                .methodBuilder("numElements")
-                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                .returns(int.class)
-                .build();
-
-        recordInterfaceBuilder.addMethod(numElements);
+        if (isLinear()) {
+            addLinearBuilders(recordInterfaceBuilder);
+            recordInterfaceBuilder.addType(createMaskedClass());
+        }
 
         recordInterfaceBuilder.addType(createPair());
 
@@ -569,79 +688,272 @@ public class RecordValidator implements Validator {
             innerClass.addMethod(attemptTransitionTo);
         }
 
-        // Make merge methods for specific concrete types
-        {
-            innerClassToField
-                    .entrySet()
-                    .stream()
-                    .sorted(Comparator.comparing(e -> e.getKey().simpleName()))
-                    .forEach(entry -> {
-                        var otherInnerClass = entry.getKey();
-                        Set<ClassName> commonFields = new HashSet<>(entry.getValue());
-                        commonFields.retainAll(types);
-
-                        MethodSpec.Builder canMergeMethodBuilder = MethodSpec
-                                .methodBuilder("canMerge")
-                                .addModifiers(Modifier.PUBLIC)
-                                .addParameter(otherInnerClass, "data")
-                                .returns(boolean.class);
-
-                        if (commonFields.isEmpty()) {
-                            canMergeMethodBuilder.addStatement("return true");
-                        } else {
-                            CodeBlock code = CodeBlock.join(
-                                    commonFields
-                                            .stream()
-                                            .map(f -> CodeBlock.of("this.$1L.equals(data.$1L)", fieldNameMap.get(f)))
-                                            .toList(),
-                                    " && "
-                            );
-                            canMergeMethodBuilder.addStatement("return $1L", code);
-                        }
+        MethodSpec fieldMask = MethodSpec
+                .methodBuilder("fieldMask")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return 0b$1L", Integer.toBinaryString(fieldMask(types)))
+                .build();
 
-                        innerClass.addMethod(canMergeMethodBuilder.build());
-
-                        MethodSpec.Builder mergeMethodBuilder = MethodSpec
-                                .methodBuilder("merge")
-                                .addModifiers(Modifier.PUBLIC)
-                                .addParameter(otherInnerClass, "data")
-                                .returns(wrappedTypeName);
-
-                        Set<ClassName> allFields = new HashSet<>(entry.getValue());
-                        allFields.addAll(types);
-                        // We have to filter the fieldTypes to make sure we get the list of common fields in order
-                        List<ClassName> fieldsCorrectOrder = fieldTypes.stream().filter(allFields::contains).toList();
-                        ClassName commonInnerClass = fieldToInnerClass.get(fieldsCorrectOrder);
-
-                        CodeBlock mergeCode = CodeBlock.join(
-                                fieldsCorrectOrder
-                                        .stream()
-                                        .map(f -> entry.getValue().contains(f) ?
-                                                CodeBlock.of("data.$1L", fieldNameMap.get(f)) :
-                                                CodeBlock.of("this.$1L", fieldNameMap.get(f)))
-                                        .toList(),
-                                ",\n"
-                        );
-                        mergeMethodBuilder.addCode("""
-                                return new $1T(
-                                    $2L
-                                );
-                                """, commonInnerClass, mergeCode);
-
-                        innerClass.addMethod(mergeMethodBuilder.build());
-                    });
+        MethodSpec.Builder fieldBuilder = MethodSpec
+                .methodBuilder("field")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "index")
+                .returns(Object.class)
+                .addCode("return switch (index) {\n$>");
+
+        for (ClassName typeName : types) {
+            fieldBuilder.addStatement("case $1L -> this.$2L", fieldTypes.indexOf(typeName), fieldNameMap.get(typeName));
         }
 
-        MethodSpec numElements = MethodSpec
-                .methodBuilder("numElements")
+        fieldBuilder
+                .addStatement("default -> null")
+                .addCode("$<};\n");
+
+        innerClass
+                .addMethod(fieldMask)
+                .addMethod(fieldBuilder.build());
+
+        return innerClass.build();
+    }
+
+    /**
+     * Linear records don't have a constructor for every combination of fields, so the user builds them up one field at
+     * a time instead, e.g. {@code XData.of(a).with(b)}.
+     */
+    private void addLinearBuilders(TypeSpec.Builder recordInterfaceBuilder) {
+        for (var fieldType : fieldTypes) {
+            var fieldName = fieldNameMap.get(fieldType);
+            var dataTypeName = dataTypeName(fieldType);
+            int index = fieldTypes.indexOf(fieldType);
+
+            CodeBlock value = fieldType.equals(dataTypeName) ?
+                    CodeBlock.of("$L", fieldName) :
+                    CodeBlock.of("$T.fromRecord($L)", dataTypeName, fieldName);
+
+            MethodSpec of = MethodSpec
+                    .methodBuilder("of")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(fieldType, fieldName)
+                    .returns(wrappedTypeName)
+                    .addStatement("$1T[] values = new $1T[$2L]", Object.class, fieldTypes.size())
+                    .addStatement("values[$1L] = $2L", index, value)
+                    .addStatement("return fromFields(0b$1L, values)", Integer.toBinaryString(1 << index))
+                    .build();
+
+            MethodSpec with = MethodSpec
+                    .methodBuilder("with")
+                    .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                    .addParameter(fieldType, fieldName)
+                    .returns(wrappedTypeName)
+                    .addCode("""
+                                    int fieldMask = this.fieldMask();
+                                    $1T[] values = new $1T[$2L];
+                                    for (int i = 0; i < $2L; i++) {
+                                        if ((fieldMask & (1 << i)) != 0) {
+                                            values[i] = this.field(i);
+                                        }
+                                    }
+                                    
+                                    values[$3L] = $4L;
+                                    return fromFields(fieldMask | 0b$5L, values);
+                                    """,
+                            Object.class,
+                            fieldTypes.size(),
+                            index,
+                            value,
+                            Integer.toBinaryString(1 << index))
+                    .build();
+
+            recordInterfaceBuilder
+                    .addMethod(of)
+                    .addMethod(with);
+        }
+    }
+
+    /**
+     * The generic data class for linear records. It holds any combination of fields that doesn't have its own class.
+     */
+    private TypeSpec createMaskedClass() {
+        FieldSpec fieldMaskField = FieldSpec
+                .builder(int.class, "fieldMask")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .build();
+
+        FieldSpec valuesField = FieldSpec
+                .builder(Object[].class, "values")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .build();
+
+        // Only keep the values that are part of the mask so equality doesn't depend on anything else in the array
+        MethodSpec constructor = MethodSpec
+                .constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "fieldMask")
+                .addParameter(Object[].class, "values")
+                .addCode("""
+                                this.fieldMask = fieldMask;
+                                this.values = new $1T[$2L];
+                                for (int i = 0; i < $2L; i++) {
+                                    if ((fieldMask & (1 << i)) != 0) {
+                                        this.values[i] = values[i];
+                                    }
+                                }
+                                """,
+                        Object.class,
+                        fieldTypes.size())
+                .build();
+
+        MethodSpec fieldMask = MethodSpec
+                .methodBuilder("fieldMask")
+                .addAnnotation(Override.class)
                 .addModifiers(Modifier.PUBLIC)
                 .returns(int.class)
-                .addStatement("return $1L", types.size())
+                .addStatement("return this.fieldMask")
                 .build();
 
-        innerClass.addMethod(numElements);
+        MethodSpec field = MethodSpec
+                .methodBuilder("field")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "index")
+                .returns(Object.class)
+                .addStatement("return this.values[index]")
+                .build();
 
-        return innerClass.build();
+        MethodSpec equals = MethodSpec
+                .methodBuilder("equals")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(Object.class, "other")
+                .returns(boolean.class)
+                .addStatement("return other instanceof $1T m && this.fieldMask == m.fieldMask && $2T.equals(this.values, m.values)", maskedName, Arrays.class)
+                .build();
+
+        MethodSpec hashCode = MethodSpec
+                .methodBuilder("hashCode")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return 31 * this.fieldMask + $T.hashCode(this.values)", Arrays.class)
+                .build();
+
+        MethodSpec.Builder toStringBuilder = MethodSpec
+                .methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("$1T joiner = new $1T(\", \", \"$2L[\", \"]\")", StringJoiner.class, maskedName.simpleName());
+        for (var fieldType : fieldTypes) {
+            int index = fieldTypes.indexOf(fieldType);
+            toStringBuilder.addStatement(
+                    "if ((this.fieldMask & 0b$1L) != 0) joiner.add(\"$2L=\" + this.values[$3L])",
+                    Integer.toBinaryString(1 << index),
+                    fieldNameMap.get(fieldType),
+                    index
+            );
+        }
+        toStringBuilder.addStatement("return joiner.toString()");
+
+        TypeSpec.Builder maskedClass = TypeSpec
+                .classBuilder(maskedName)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(wrappedTypeName)
+                .addField(fieldMaskField)
+                .addField(valuesField)
+                .addMethod(constructor)
+                .addMethod(fieldMask)
+                .addMethod(field);
+
+        if (supportsStateTransition()) {
+            List<CodeBlock> compareTransitions = new ArrayList<>();
+            List<CodeBlock> attemptTransitions = new ArrayList<>();
+
+            for (var fieldType : fieldTypes) {
+                if (!supportsStateTransition.get(fieldType)) {
+                    continue;
+                }
+
+                var fieldName = fieldNameMap.get(fieldType);
+                var dataTypeName = dataTypeName(fieldType);
+                int index = fieldTypes.indexOf(fieldType);
+
+                compareTransitions.add(CodeBlock.of(
+                        """
+                                $3T $1LField = $2L(data);
+                                if((this.fieldMask & 0b$4L) != 0 && $1LField != null && !(($3T) this.values[$5L]).canTransitionState($1LField)) return false;
+                                """,
+                        fieldName,
+                        "get" + Util.ucfirst(fieldName),
+                        dataTypeName,
+                        Integer.toBinaryString(1 << index),
+                        index
+                ));
+
+                attemptTransitions.add(CodeBlock.of(
+                        """
+                                $3T $1LField = $2L(data);
+                                if((this.fieldMask & 0b$4L) != 0 && $1LField != null) (($3T) this.values[$5L]).attemptTransitionTo($1LField);
+                                """,
+                        fieldName,
+                        "get" + Util.ucfirst(fieldName),
+                        dataTypeName,
+                        Integer.toBinaryString(1 << index),
+                        index
+                ));
+            }
+
+            maskedClass.addMethod(MethodSpec
+                    .methodBuilder("canTransitionState")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(boolean.class)
+                    .addParameter(wrappedTypeName, "data")
+                    .addCode(CodeBlock.join(compareTransitions, "\n"))
+                    .addStatement("return true")
+                    .build());
+
+            maskedClass.addMethod(MethodSpec
+                    .methodBuilder("attemptTransitionTo")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(wrappedTypeName, "data")
+                    .beginControlFlow("try")
+                    .addCode(CodeBlock.join(attemptTransitions, "\n"))
+                    .nextControlFlow("catch ($T ex)", InvalidStateTransition.class)
+                    .addStatement("throw new $T(this, data, ex)", InvalidStateTransition.class)
+                    .endControlFlow()
+                    .build());
+        }
+
+        return maskedClass
+                .addMethod(equals)
+                .addMethod(hashCode)
+                .addMethod(toStringBuilder.build())
+                .build();
+    }
+
+    /**
+     * @param types The fields present in a data class
+     * @return The bitmask with bit i set for every fieldTypes[i] in the given list
+     */
+    private int fieldMask(List<ClassName> types) {
+        int mask = 0;
+        for (var type : types) {
+            mask |= 1 << fieldTypes.indexOf(type);
+        }
+        return mask;
+    }
+
+    private ClassName dataTypeName(ClassName typeName) {
+        if (nestedRecords.containsKey(typeName)) {
+            return nestedRecords.get(typeName);
+        } else if (nestedInterfaces.containsKey(typeName)) {
+            return nestedInterfaces.get(typeName);
+        }
+        return typeName;
     }
 
     private TypeSpec createPair() {
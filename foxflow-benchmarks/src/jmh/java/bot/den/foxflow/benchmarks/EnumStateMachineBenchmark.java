@@ -0,0 +1,96 @@
+package bot.den.foxflow.benchmarks;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnumStateMachineBenchmark {
+    private BenchmarkEnumStateMachine noGuardsFiring;
+    private BenchmarkEnumStateMachine oneGuardFiring;
+    private BenchmarkEnumStateMachine manyGuardsFiring;
+    private BenchmarkEnumStateMachine commandDriven;
+
+    private Trigger intakingTrigger;
+    private Command toIdle;
+    private Command toIntaking;
+    private boolean goToIntaking;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        // Every state has guards registered, but none of them ever let the machine move
+        noGuardsFiring = new BenchmarkEnumStateMachine(BenchmarkEnum.IDLE);
+        for (var from : BenchmarkEnum.values()) {
+            for (var to : BenchmarkEnum.values()) {
+                if (from != to) {
+                    noGuardsFiring.state(from).to(to).transitionWhen(() -> false);
+                }
+            }
+        }
+
+        // Bounces between two states, one guard firing on every poll
+        oneGuardFiring = new BenchmarkEnumStateMachine(BenchmarkEnum.IDLE);
+        oneGuardFiring.state(BenchmarkEnum.IDLE).to(BenchmarkEnum.INTAKING).transitionAlways();
+        oneGuardFiring.state(BenchmarkEnum.INTAKING).to(BenchmarkEnum.IDLE).transitionAlways();
+
+        // Bounces between two states, with several guards agreeing on the target each poll
+        manyGuardsFiring = new BenchmarkEnumStateMachine(BenchmarkEnum.IDLE);
+        for (int i = 0; i < 8; i++) {
+            manyGuardsFiring.state(BenchmarkEnum.IDLE).to(BenchmarkEnum.INTAKING).transitionWhen(() -> true);
+            manyGuardsFiring.state(BenchmarkEnum.INTAKING).to(BenchmarkEnum.IDLE).transitionWhen(() -> true);
+        }
+
+        intakingTrigger = oneGuardFiring.state(BenchmarkEnum.INTAKING).trigger();
+
+        // Only ever moved by the transitionTo commands, so it always alternates between two known states
+        commandDriven = new BenchmarkEnumStateMachine(BenchmarkEnum.IDLE);
+        toIdle = commandDriven.transitionTo(BenchmarkEnum.IDLE);
+        toIntaking = commandDriven.transitionTo(BenchmarkEnum.INTAKING);
+    }
+
+    @Benchmark
+    public BenchmarkEnum pollNoGuardsFiring() {
+        noGuardsFiring.poll();
+        return noGuardsFiring.currentState();
+    }
+
+    @Benchmark
+    public BenchmarkEnum pollOneGuardFiring() {
+        oneGuardFiring.poll();
+        return oneGuardFiring.currentState();
+    }
+
+    @Benchmark
+    public BenchmarkEnum pollManyGuardsFiring() {
+        manyGuardsFiring.poll();
+        return manyGuardsFiring.currentState();
+    }
+
+    @Benchmark
+    public boolean triggerEvaluation() {
+        return intakingTrigger.getAsBoolean();
+    }
+
+    /**
+     * The transitionTo commands run updateState directly, so this measures a state change without any guard lookup.
+     */
+    @Benchmark
+    public BenchmarkEnum updateState() {
+        goToIntaking = !goToIntaking;
+        (goToIntaking ? toIntaking : toIdle).initialize();
+        return commandDriven.currentState();
+    }
+
+    @Benchmark
+    public void transitionToCommand(Blackhole blackhole) {
+        blackhole.consume(commandDriven.transitionTo(BenchmarkEnum.SHOOTING));
+    }
+}
@@ -0,0 +1,92 @@
+package bot.den.foxflow.benchmarks;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterfaceRecordStateMachineBenchmark {
+    private MechanismStateStateMachine noGuardsFiring;
+    private MechanismStateStateMachine oneGuardFiring;
+    private MechanismStateStateMachine manyGuardsFiring;
+    private MechanismStateStateMachine commandDriven;
+
+    private Trigger deployedTrigger;
+    private Command toStowed;
+    private Command toClimber;
+    private boolean goToClimber;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        noGuardsFiring = new MechanismStateStateMachine(Arm.STOWED, IntakeState.IDLE);
+        noGuardsFiring.state(Arm.STOWED).to(Arm.DEPLOYED).transitionWhen(() -> false);
+        noGuardsFiring.state(Arm.STOWED).to(Climber.EXTENDED).transitionWhen(() -> false);
+        noGuardsFiring.state(Arm.STOWED, IntakeState.IDLE).to(IntakeState.INTAKING).transitionWhen(() -> false);
+
+        // Moves between two implementations of the interface on every poll
+        oneGuardFiring = new MechanismStateStateMachine(Arm.STOWED, IntakeState.IDLE);
+        oneGuardFiring.state(Arm.STOWED).to(Arm.DEPLOYED).transitionAlways();
+        oneGuardFiring.state(Arm.DEPLOYED).to(Arm.STOWED).transitionAlways();
+
+        manyGuardsFiring = new MechanismStateStateMachine(Arm.STOWED, IntakeState.IDLE);
+        manyGuardsFiring.state(Arm.STOWED).to(Climber.RETRACTED).transitionWhen(() -> true);
+        manyGuardsFiring.state(IntakeState.IDLE).to(IntakeState.INTAKING).transitionWhen(() -> true);
+        manyGuardsFiring.state(Arm.STOWED, IntakeState.IDLE).to(Climber.RETRACTED).transitionWhen(() -> true);
+        manyGuardsFiring.state(Climber.RETRACTED).to(Arm.STOWED).transitionWhen(() -> true);
+        manyGuardsFiring.state(IntakeState.INTAKING).to(IntakeState.IDLE).transitionWhen(() -> true);
+        manyGuardsFiring.state(Climber.RETRACTED, IntakeState.INTAKING).to(Arm.STOWED).transitionWhen(() -> true);
+
+        deployedTrigger = oneGuardFiring.state(Arm.DEPLOYED).trigger();
+
+        // Only ever moved by the transitionTo commands, so it always alternates between two known states
+        commandDriven = new MechanismStateStateMachine(Arm.STOWED, IntakeState.IDLE);
+        toStowed = commandDriven.transitionTo(Arm.STOWED);
+        toClimber = commandDriven.transitionTo(Climber.RETRACTED);
+    }
+
+    @Benchmark
+    public MechanismState pollNoGuardsFiring() {
+        noGuardsFiring.poll();
+        return noGuardsFiring.currentState();
+    }
+
+    @Benchmark
+    public MechanismState pollOneGuardFiring() {
+        oneGuardFiring.poll();
+        return oneGuardFiring.currentState();
+    }
+
+    @Benchmark
+    public MechanismState pollManyGuardsFiring() {
+        manyGuardsFiring.poll();
+        return manyGuardsFiring.currentState();
+    }
+
+    @Benchmark
+    public boolean triggerEvaluation() {
+        return deployedTrigger.getAsBoolean();
+    }
+
+    /**
+     * The transitionTo commands run updateState directly, so this measures a state change without any guard lookup.
+     */
+    @Benchmark
+    public MechanismState updateState() {
+        goToClimber = !goToClimber;
+        (goToClimber ? toClimber : toStowed).initialize();
+        return commandDriven.currentState();
+    }
+
+    @Benchmark
+    public void transitionToCommand(Blackhole blackhole) {
+        blackhole.consume(commandDriven.transitionTo(Climber.EXTENDED));
+    }
+}
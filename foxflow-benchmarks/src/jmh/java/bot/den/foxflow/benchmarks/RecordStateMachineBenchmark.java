@@ -0,0 +1,99 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.RobotState;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecordStateMachineBenchmark {
+    private GameStateStateMachine noGuardsFiring;
+    private GameStateStateMachine oneGuardFiring;
+    private GameStateStateMachine manyGuardsFiring;
+    private GameStateStateMachine commandDriven;
+
+    private Trigger intakingTrigger;
+    private Command toIdle;
+    private Command toIntaking;
+    private boolean goToIntaking;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        // A handful of guards at different levels of specificity, none of which ever fire
+        noGuardsFiring = new GameStateStateMachine(IntakeState.IDLE, ShooterState.STOPPED);
+        noGuardsFiring.state(IntakeState.IDLE).to(IntakeState.INTAKING).transitionWhen(() -> false);
+        noGuardsFiring.state(ShooterState.STOPPED).to(ShooterState.SPINNING_UP).transitionWhen(() -> false);
+        noGuardsFiring.state(IntakeState.IDLE, ShooterState.STOPPED).to(ShooterState.READY).transitionWhen(() -> false);
+        noGuardsFiring.state(RobotState.AUTO, IntakeState.IDLE).to(IntakeState.INTAKING).transitionWhen(() -> false);
+        noGuardsFiring.state(RobotState.DISABLED).to(IntakeState.EJECTING).transitionWhen(() -> false);
+
+        // Bounces the intake back and forth, one guard firing on every poll
+        oneGuardFiring = new GameStateStateMachine(IntakeState.IDLE, ShooterState.STOPPED);
+        oneGuardFiring.state(IntakeState.IDLE).to(IntakeState.INTAKING).transitionAlways();
+        oneGuardFiring.state(IntakeState.INTAKING).to(IntakeState.IDLE).transitionAlways();
+
+        // Bounces the intake and shooter together, with overlapping guards that have to be merged each poll
+        manyGuardsFiring = new GameStateStateMachine(IntakeState.IDLE, ShooterState.STOPPED);
+        manyGuardsFiring.state(IntakeState.IDLE).to(IntakeState.INTAKING).transitionWhen(() -> true);
+        manyGuardsFiring.state(ShooterState.STOPPED).to(ShooterState.SPINNING_UP).transitionWhen(() -> true);
+        manyGuardsFiring.state(RobotState.DISABLED, IntakeState.IDLE).to(IntakeState.INTAKING).transitionWhen(() -> true);
+        manyGuardsFiring.state(IntakeState.IDLE, ShooterState.STOPPED).to(ShooterState.SPINNING_UP).transitionWhen(() -> true);
+        manyGuardsFiring.state(IntakeState.INTAKING).to(IntakeState.IDLE).transitionWhen(() -> true);
+        manyGuardsFiring.state(ShooterState.SPINNING_UP).to(ShooterState.STOPPED).transitionWhen(() -> true);
+        manyGuardsFiring.state(RobotState.DISABLED, ShooterState.SPINNING_UP).to(ShooterState.STOPPED).transitionWhen(() -> true);
+        manyGuardsFiring.state(IntakeState.INTAKING, ShooterState.SPINNING_UP).to(IntakeState.IDLE).transitionWhen(() -> true);
+
+        intakingTrigger = oneGuardFiring.state(IntakeState.INTAKING).trigger();
+
+        // Only ever moved by the transitionTo commands, so it always alternates between two known states
+        commandDriven = new GameStateStateMachine(IntakeState.IDLE, ShooterState.STOPPED);
+        toIdle = commandDriven.transitionTo(IntakeState.IDLE);
+        toIntaking = commandDriven.transitionTo(IntakeState.INTAKING);
+    }
+
+    @Benchmark
+    public GameState pollNoGuardsFiring() {
+        noGuardsFiring.poll();
+        return noGuardsFiring.currentState();
+    }
+
+    @Benchmark
+    public GameState pollOneGuardFiring() {
+        oneGuardFiring.poll();
+        return oneGuardFiring.currentState();
+    }
+
+    @Benchmark
+    public GameState pollManyGuardsFiring() {
+        manyGuardsFiring.poll();
+        return manyGuardsFiring.currentState();
+    }
+
+    @Benchmark
+    public boolean triggerEvaluation() {
+        return intakingTrigger.getAsBoolean();
+    }
+
+    /**
+     * The transitionTo commands run updateState directly, so this measures a state change without any guard lookup.
+     */
+    @Benchmark
+    public GameState updateState() {
+        goToIntaking = !goToIntaking;
+        (goToIntaking ? toIntaking : toIdle).initialize();
+        return commandDriven.currentState();
+    }
+
+    @Benchmark
+    public void transitionToCommand(Blackhole blackhole) {
+        blackhole.consume(commandDriven.transitionTo(IntakeState.EJECTING, ShooterState.READY));
+    }
+}
@@ -0,0 +1,15 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.StateMachine;
+
+@StateMachine
+public enum BenchmarkEnum {
+    IDLE,
+    INTAKING,
+    INTAKEN,
+    HANDOFF,
+    SPINNING_UP,
+    SHOOTING,
+    CLIMBING,
+    CLIMBED
+}
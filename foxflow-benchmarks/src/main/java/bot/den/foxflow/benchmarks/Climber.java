@@ -0,0 +1,6 @@
+package bot.den.foxflow.benchmarks;
+
+public enum Climber implements Mechanism {
+    RETRACTED,
+    EXTENDED
+}
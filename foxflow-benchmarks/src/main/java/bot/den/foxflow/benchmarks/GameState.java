@@ -0,0 +1,15 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.RobotState;
+import bot.den.foxflow.StateMachine;
+
+/**
+ * Mirrors the shape of a typical robot record, with the driver station mode next to a couple of mechanisms.
+ */
+@StateMachine
+public record GameState(
+        RobotState robotState,
+        IntakeState intake,
+        ShooterState shooter
+) {
+}
@@ -0,0 +1,22 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.LimitsStateTransitions;
+
+import java.util.Set;
+
+public enum IntakeState implements LimitsStateTransitions<IntakeState> {
+    IDLE,
+    INTAKING,
+    INTAKEN,
+    EJECTING;
+
+    @Override
+    public boolean canTransitionState(IntakeState newState) {
+        return (switch (this) {
+            case IDLE -> Set.of(INTAKING, EJECTING);
+            case INTAKING -> Set.of(IDLE, INTAKEN);
+            case INTAKEN -> Set.of(IDLE, EJECTING);
+            case EJECTING -> Set.of(IDLE);
+        }).contains(newState);
+    }
+}
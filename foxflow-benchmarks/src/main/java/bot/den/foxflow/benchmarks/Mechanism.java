@@ -0,0 +1,4 @@
+package bot.den.foxflow.benchmarks;
+
+public interface Mechanism {
+}
@@ -0,0 +1,13 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.StateMachine;
+
+/**
+ * A record with an interface field, so transitions go through the generated interface wrapper.
+ */
+@StateMachine
+public record MechanismState(
+        Mechanism mechanism,
+        IntakeState intake
+) {
+}
@@ -0,0 +1,7 @@
+package bot.den.foxflow.benchmarks;
+
+public enum ShooterState {
+    STOPPED,
+    SPINNING_UP,
+    READY
+}
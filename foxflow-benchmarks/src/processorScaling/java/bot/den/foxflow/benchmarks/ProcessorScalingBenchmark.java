@@ -0,0 +1,330 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.StateMachine;
+import bot.den.foxflow.StateMachineAnnotationProcessor;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.*;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Runs the annotation processor in-process over synthetic records of increasing width and nesting depth, and reports
+ * how long the processor took and how much code it produced.
+ * <p>
+ * Arguments, all optional:
+ * <ul>
+ *     <li>{@code --widths=1-10} the range of record widths to generate</li>
+ *     <li>{@code --depths=1-3} the range of nesting depths to generate</li>
+ *     <li>{@code --generations=PERMUTATIONS,LINEAR} which {@link StateMachine.Generation} modes to compare</li>
+ *     <li>{@code --warmup=2} untimed compiles before the sweep, so the processor and javac are JIT compiled</li>
+ *     <li>{@code --iterations=3} timed compiles per configuration, the median is reported</li>
+ *     <li>{@code --csv=path} also write the results as CSV</li>
+ * </ul>
+ */
+public class ProcessorScalingBenchmark {
+    record Result(
+            SyntheticRecords records,
+            double processingMillis,
+            double compileMillis,
+            long generatedSourceBytes,
+            int generatedClasses,
+            long generatedBytecodeBytes
+    ) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected arguments of the form --name=value, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        int[] widths = range(options.getOrDefault("widths", "1-10"));
+        int[] depths = range(options.getOrDefault("depths", "1-3"));
+        List<StateMachine.Generation> generations = Arrays.stream(options.getOrDefault("generations", "PERMUTATIONS,LINEAR").split(","))
+                .map(String::trim)
+                .map(StateMachine.Generation::valueOf)
+                .toList();
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+
+        var benchmark = new ProcessorScalingBenchmark();
+
+        // Warm up on something mid-sized so the numbers for the small records aren't dominated by class loading
+        var warmupRecords = new SyntheticRecords(Math.min(4, widths[widths.length - 1]), 1, generations.get(0));
+        for (int i = 0; i < warmup; i++) {
+            benchmark.compile(warmupRecords);
+        }
+
+        List<Result> results = new ArrayList<>();
+        printHeader(System.out);
+        for (var generation : generations) {
+            for (int depth : depths) {
+                for (int width : widths) {
+                    var records = new SyntheticRecords(width, depth, generation);
+
+                    List<Result> runs = new ArrayList<>();
+                    for (int i = 0; i < iterations; i++) {
+                        runs.add(benchmark.compile(records));
+                    }
+                    runs.sort(Comparator.comparingDouble(Result::processingMillis));
+
+                    Result median = runs.get(runs.size() / 2);
+                    results.add(median);
+                    printRow(System.out, median);
+                }
+            }
+        }
+
+        String csv = options.get("csv");
+        if (csv != null) {
+            Path path = Path.of(csv);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (var out = new PrintStream(Files.newOutputStream(path), false, StandardCharsets.UTF_8)) {
+                out.println("generation,width,depth,processingMillis,compileMillis,generatedSourceBytes,generatedClasses,generatedBytecodeBytes");
+                for (Result result : results) {
+                    out.printf(
+                            Locale.ROOT,
+                            "%s,%d,%d,%.3f,%.3f,%d,%d,%d%n",
+                            result.records().generation(),
+                            result.records().width(),
+                            result.records().depth(),
+                            result.processingMillis(),
+                            result.compileMillis(),
+                            result.generatedSourceBytes(),
+                            result.generatedClasses(),
+                            result.generatedBytecodeBytes()
+                    );
+                }
+            }
+            System.out.println("Wrote " + path.toAbsolutePath());
+        }
+    }
+
+    private final JavaCompiler compiler;
+    private final String classPath;
+
+    ProcessorScalingBenchmark() {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler is available, this needs to run on a JDK");
+        }
+
+        classPath = System.getProperty("java.class.path");
+    }
+
+    Result compile(SyntheticRecords records) throws IOException {
+        Path workDirectory = Files.createTempDirectory("foxflow-scaling");
+        try {
+            Path sourceOutput = Files.createDirectories(workDirectory.resolve("generated"));
+            Path classOutput = Files.createDirectories(workDirectory.resolve("classes"));
+
+            List<JavaFileObject> sources = new ArrayList<>();
+            records.sources().forEach((name, source) -> sources.add(new StringSource(name, source)));
+
+            var diagnostics = new DiagnosticCollector<JavaFileObject>();
+            var processor = new TimingProcessor(new StateMachineAnnotationProcessor());
+
+            try (var fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+                fileManager.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, List.of(sourceOutput));
+                fileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(classOutput));
+
+                var task = compiler.getTask(
+                        null,
+                        fileManager,
+                        diagnostics,
+                        List.of("-classpath", classPath, "-nowarn", "-XDstringConcat=inline"),
+                        null,
+                        sources
+                );
+                task.setProcessors(List.of(processor));
+
+                long start = System.nanoTime();
+                boolean success = task.call();
+                long compileNanos = System.nanoTime() - start;
+
+                if (!success) {
+                    StringBuilder message = new StringBuilder("Compiling " + records + " failed:");
+                    for (var diagnostic : diagnostics.getDiagnostics()) {
+                        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                            message.append('\n').append(diagnostic);
+                        }
+                    }
+                    throw new IllegalStateException(message.toString());
+                }
+
+                long sourceBytes = 0;
+                int classes = 0;
+                long bytecodeBytes = 0;
+                for (Path generated : listFiles(sourceOutput, ".java")) {
+                    sourceBytes += Files.size(generated);
+
+                    // A generated file produces its own class plus any nested classes inside it
+                    Path relative = sourceOutput.relativize(generated);
+                    String simpleName = relative.getFileName().toString().replace(".java", "");
+                    Path classDirectory = classOutput.resolve(relative).getParent();
+                    for (Path compiled : listFiles(classDirectory, ".class")) {
+                        String className = compiled.getFileName().toString();
+                        if (className.equals(simpleName + ".class") || className.startsWith(simpleName + "$")) {
+                            classes++;
+                            bytecodeBytes += Files.size(compiled);
+                        }
+                    }
+                }
+
+                return new Result(
+                        records,
+                        processor.nanos / 1e6,
+                        compileNanos / 1e6,
+                        sourceBytes,
+                        classes,
+                        bytecodeBytes
+                );
+            }
+        } finally {
+            // Children sort after their parents, so deleting in reverse empties each directory first
+            List<Path> paths = new ArrayList<>(listFiles(workDirectory, ""));
+            Collections.reverse(paths);
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+            Files.deleteIfExists(workDirectory);
+        }
+    }
+
+    private static List<Path> listFiles(Path directory, String suffix) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths
+                    .filter(path -> !path.equals(directory))
+                    .filter(path -> suffix.isEmpty() || (Files.isRegularFile(path) && path.toString().endsWith(suffix)))
+                    .sorted()
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int[] range(String spec) {
+        String[] bounds = spec.split("-");
+        int low = Integer.parseInt(bounds[0].trim());
+        int high = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : low;
+        if (low < 1 || high < low) {
+            throw new IllegalArgumentException("Invalid range " + spec);
+        }
+        int[] values = new int[high - low + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = low + i;
+        }
+        return values;
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.printf(
+                "%-12s %5s %5s %12s %12s %14s %8s %14s%n",
+                "generation", "width", "depth", "process ms", "compile ms", "source bytes", "classes", "bytecode bytes"
+        );
+    }
+
+    private static void printRow(PrintStream out, Result result) {
+        out.printf(
+                Locale.ROOT,
+                "%-12s %5d %5d %12.1f %12.1f %14d %8d %14d%n",
+                result.records().generation(),
+                result.records().width(),
+                result.records().depth(),
+                result.processingMillis(),
+                result.compileMillis(),
+                result.generatedSourceBytes(),
+                result.generatedClasses(),
+                result.generatedBytecodeBytes()
+        );
+    }
+
+    private static class StringSource extends SimpleJavaFileObject {
+        private final String source;
+
+        StringSource(String binaryName, String source) {
+            super(URI.create("string:///" + binaryName.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /**
+     * Only counts the time spent inside the processor, which keeps the rest of javac out of the processing numbers.
+     */
+    private static class TimingProcessor implements Processor {
+        private final Processor delegate;
+        long nanos;
+
+        TimingProcessor(Processor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            delegate.init(processingEnv);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation, ExecutableElement member, String userText) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
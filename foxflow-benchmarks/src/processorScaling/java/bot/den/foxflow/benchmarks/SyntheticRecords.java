@@ -0,0 +1,90 @@
+package bot.den.foxflow.benchmarks;
+
+import bot.den.foxflow.StateMachine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the source for a synthetic {@code @StateMachine} record of a given width and nesting depth.
+ * <p>
+ * Every record has {@code width} fields. At depth one they are all enums, and every level above that swaps its first
+ * enum for the record one level down, so the number of leaf fields grows with both dimensions.
+ */
+record SyntheticRecords(int width, int depth, StateMachine.Generation generation) {
+    static final int ENUM_VALUES = 3;
+
+    String packageName() {
+        return "bot.den.foxflow.benchmarks.synthetic.w%d.d%d.%s".formatted(width, depth, generation.name().toLowerCase());
+    }
+
+    String topLevelName() {
+        return recordName(depth);
+    }
+
+    /**
+     * @return the source files to compile, keyed by their binary name
+     */
+    Map<String, String> sources() {
+        Map<String, String> sources = new LinkedHashMap<>();
+
+        for (int i = 0; i < width; i++) {
+            sources.put(packageName() + "." + enumName(i), enumSource(i));
+        }
+
+        for (int level = 1; level <= depth; level++) {
+            sources.put(packageName() + "." + recordName(level), recordSource(level));
+        }
+
+        return sources;
+    }
+
+    private String enumSource(int index) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < ENUM_VALUES; i++) {
+            values.add("V" + i);
+        }
+
+        return """
+                package %s;
+
+                public enum %s {
+                    %s
+                }
+                """.formatted(packageName(), enumName(index), String.join(", ", values));
+    }
+
+    private String recordSource(int level) {
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            if (i == 0 && level > 1) {
+                fields.add(recordName(level - 1) + " nested");
+            } else {
+                fields.add(enumName(i) + " field" + i);
+            }
+        }
+
+        String annotation = "";
+        if (level == depth) {
+            annotation = "@bot.den.foxflow.StateMachine(generation = bot.den.foxflow.StateMachine.Generation.%s)\n"
+                    .formatted(generation.name());
+        }
+
+        return """
+                package %s;
+
+                %spublic record %s(%s) {
+                }
+                """.formatted(packageName(), annotation, recordName(level), String.join(", ", fields));
+    }
+
+    private static String enumName(int index) {
+        return "Field" + index;
+    }
+
+    private static String recordName(int level) {
+        return "Level" + level;
+    }
+}
@@ -20,6 +20,10 @@ tasks.test {
     useJUnitPlatform()
 }
 
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.addAll(listOf("-Xlint:all,-processing", "-Werror"))
+}
+
 java {
     if (project.hasProperty("version")) {
         withSourcesJar()
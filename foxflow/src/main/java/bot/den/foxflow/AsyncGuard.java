@@ -0,0 +1,129 @@
+package bot.den.foxflow;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A guard that runs an expensive condition on a background thread, so polling the state machine only reads the last
+ * answer.
+ * <p>
+ * Every time the guard is read, the latest result is returned and, if the condition isn't already running, a new
+ * evaluation is started in the background. Until the first evaluation finishes the guard reads as false. With a
+ * maximum age, a result older than that also reads as false, so a condition that's stuck (a vision pipeline that
+ * stopped answering, for example) can't keep a transition firing.
+ * <p>
+ * Generated state machines {@linkplain #invalidate() invalidate} an async guard whenever they enter the state it
+ * transitions from. After that the guard reads as false until an evaluation that started after the state was entered
+ * finishes, so an answer measured during an earlier visit to the state can't fire a transition the moment it's entered
+ * again. A guard shared between several transitions or state machines is invalidated by each of them.
+ * <p>
+ * The condition is called from a background thread, so it needs to be safe to call off the main robot thread. If it
+ * throws, the exception is rethrown from the next read on the polling thread, just as a regular guard's would be.
+ */
+public final class AsyncGuard implements BooleanSupplier {
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "foxflow-async-guard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BooleanSupplier condition;
+    private final long maxAgeNanos;
+    private final Executor executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Runnable evaluate = this::evaluate;
+
+    // Null until the first evaluation finishes. Every evaluation publishes a new result, so a read never sees the value
+    // of one evaluation with the time of another.
+    private volatile Result result;
+    // Only changed from the polling thread, results from an earlier generation read as false
+    private volatile int generation;
+    private volatile RuntimeException failure;
+
+    /**
+     * @param condition the condition to evaluate in the background
+     */
+    public AsyncGuard(BooleanSupplier condition) {
+        this(condition, null);
+    }
+
+    /**
+     * @param condition the condition to evaluate in the background
+     * @param maxAge    how old a result can be before the guard reads as false, or null to always use the last result
+     */
+    public AsyncGuard(BooleanSupplier condition, Duration maxAge) {
+        this(condition, maxAge, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param condition the condition to evaluate in the background
+     * @param maxAge    how old a result can be before the guard reads as false, or null to always use the last result
+     * @param executor  where to run the condition
+     */
+    public AsyncGuard(BooleanSupplier condition, Duration maxAge, Executor executor) {
+        if (maxAge != null && maxAge.isNegative()) {
+            throw new IllegalArgumentException("The maximum age of an async guard can't be negative");
+        }
+
+        this.condition = condition;
+        this.maxAgeNanos = maxAge == null ? Long.MAX_VALUE : maxAge.toNanos();
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        var failure = this.failure;
+        if (failure != null) {
+            this.failure = null;
+            throw failure;
+        }
+
+        if (running.compareAndSet(false, true)) {
+            try {
+                executor.execute(evaluate);
+            } catch (RuntimeException e) {
+                running.set(false);
+                throw e;
+            }
+        }
+
+        var result = this.result;
+        if (result == null || result.generation() != generation) {
+            return false;
+        }
+
+        if (maxAgeNanos != Long.MAX_VALUE && System.nanoTime() - result.measuredAtNanos() > maxAgeNanos) {
+            return false;
+        }
+
+        return result.value();
+    }
+
+    /**
+     * Forgets the last result. The guard reads as false until an evaluation that starts after this call finishes, even
+     * if one is already running.
+     */
+    public void invalidate() {
+        generation++;
+    }
+
+    private void evaluate() {
+        try {
+            int generation = this.generation;
+            // Age is measured from when the condition started, since that's when the world looked like this
+            long start = System.nanoTime();
+            this.result = new Result(condition.getAsBoolean(), start, generation);
+        } catch (RuntimeException e) {
+            this.failure = e;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private record Result(boolean value, long measuredAtNanos, int generation) {
+    }
+}
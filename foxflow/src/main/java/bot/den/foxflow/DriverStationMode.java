@@ -0,0 +1,22 @@
+package bot.den.foxflow;
+
+/**
+ * The driver station mode packed into an int, one flag per bit. Generated state machines read it once per poll, and a
+ * {@link StateMachineGroup} reads it once for every state machine in the group.
+ */
+public final class DriverStationMode {
+    public static final int DISABLED = 1;
+    public static final int AUTONOMOUS_ENABLED = 1 << 1;
+    public static final int TELEOP_ENABLED = 1 << 2;
+    public static final int TEST = 1 << 3;
+
+    private DriverStationMode() {
+    }
+
+    public static int of(boolean disabled, boolean autonomousEnabled, boolean teleopEnabled, boolean test) {
+        return (disabled ? DISABLED : 0)
+                | (autonomousEnabled ? AUTONOMOUS_ENABLED : 0)
+                | (teleopEnabled ? TELEOP_ENABLED : 0)
+                | (test ? TEST : 0);
+    }
+}
@@ -0,0 +1,307 @@
+package bot.den.foxflow;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the most recent state transitions in a memory-mapped ring file.
+ * <p>
+ * Recording a transition is a handful of stores into mapped memory, with no system calls. The kernel owns those pages,
+ * so the file keeps everything written up to the moment the JVM dies, even if it's killed or crashes. Read the file on
+ * the next start with {@link #read(Path)} before opening a new recorder over it.
+ * <p>
+ * A recorder is meant to be shared by every state machine on the robot thread. It isn't safe to record from more than
+ * one thread at a time.
+ */
+public final class FlightRecorder implements AutoCloseable {
+    private static final int MAGIC = 0x46584652; // "FXFR"
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int NAMES_CAPACITY_OFFSET = 12;
+    private static final int NAMES_USED_OFFSET = 16;
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * sequence, timestamp, machine, from, to, guard
+     */
+    private static final int ENTRY_SIZE = 32;
+
+    private static final int DEFAULT_NAMES_CAPACITY = 64 * 1024;
+
+    // Volatile access to the sequence number of an entry, which is what marks the entry as complete
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int namesCapacity;
+    private final int entriesOffset;
+    private final LongSupplier clockMicros;
+
+    private long sequence;
+    private int namesUsed;
+    private int machineCount;
+
+    /**
+     * One recorded transition
+     *
+     * @param sequence        increases by one with every transition recorded, starting at one
+     * @param timestampMicros when the transition happened, from the recorder's clock
+     * @param machine         the id returned by {@link #registerMachine(String)}
+     * @param from            the state id being left
+     * @param to              the state id being entered
+     * @param guard           the guard that caused the transition, or -1 if it was requested directly
+     */
+    public record Entry(long sequence, long timestampMicros, int machine, int from, int to, int guard) {
+    }
+
+    /**
+     * Everything that could be read back from a flight recorder file
+     */
+    public static final class Recording {
+        private final List<Entry> entries;
+        private final Map<Integer, String> machineNames;
+        private final Map<Integer, Map<Integer, String>> stateNames;
+
+        private Recording(List<Entry> entries, Map<Integer, String> machineNames, Map<Integer, Map<Integer, String>> stateNames) {
+            this.entries = entries;
+            this.machineNames = machineNames;
+            this.stateNames = stateNames;
+        }
+
+        /**
+         * @return the transitions still in the file, oldest first
+         */
+        public List<Entry> entries() {
+            return entries;
+        }
+
+        /**
+         * @return the name the machine was registered with, or null if it isn't known
+         */
+        public String machineName(int machine) {
+            return machineNames.get(machine);
+        }
+
+        /**
+         * @return the name of a state of the given machine, or null if it isn't known
+         */
+        public String stateName(int machine, int state) {
+            var names = stateNames.get(machine);
+            return names == null ? null : names.get(state);
+        }
+    }
+
+    private FlightRecorder(Path path, int capacity, int namesCapacity, LongSupplier clockMicros) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The flight recorder needs room for at least one entry");
+        }
+
+        this.capacity = capacity;
+        // Entries need to be 8 byte aligned for the volatile writes
+        this.namesCapacity = (namesCapacity + 7) & ~7;
+        this.entriesOffset = HEADER_SIZE + this.namesCapacity;
+        this.clockMicros = clockMicros;
+
+        long size = (long) entriesOffset + (long) capacity * ENTRY_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The flight recorder file would be too large");
+        }
+
+        channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        );
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(NAMES_CAPACITY_OFFSET, this.namesCapacity);
+        buffer.putInt(NAMES_USED_OFFSET, 0);
+        INT.setVolatile(buffer, MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Creates a new flight recorder file, replacing anything already at the path. Timestamps are wall clock
+     * microseconds.
+     *
+     * @param path     where to keep the file
+     * @param capacity how many transitions to keep before the oldest are overwritten
+     */
+    public static FlightRecorder open(Path path, int capacity) throws IOException {
+        return open(path, capacity, () -> System.currentTimeMillis() * 1000);
+    }
+
+    /**
+     * Creates a new flight recorder file, replacing anything already at the path.
+     *
+     * @param path        where to keep the file
+     * @param capacity    how many transitions to keep before the oldest are overwritten
+     * @param clockMicros the clock to timestamp transitions with, such as {@code RobotController::getFPGATime}
+     */
+    public static FlightRecorder open(Path path, int capacity, LongSupplier clockMicros) throws IOException {
+        return new FlightRecorder(path, capacity, DEFAULT_NAMES_CAPACITY, clockMicros);
+    }
+
+    /**
+     * Gives a state machine an id to record with, and stores its name in the file.
+     */
+    public int registerMachine(String name) {
+        int machine = machineCount++;
+        writeName(machine, -1, name);
+        return machine;
+    }
+
+    /**
+     * Stores the name of one of a state machine's states in the file. Names are kept separately from the transitions,
+     * so they are never overwritten, but names past the space set aside for them are dropped.
+     */
+    public void registerState(int machine, int state, String name) {
+        writeName(machine, state, name);
+    }
+
+    /**
+     * Records a transition.
+     */
+    public void record(int machine, int from, int to, int guard) {
+        long sequence = ++this.sequence;
+        int offset = entriesOffset + (int) ((sequence - 1) % capacity) * ENTRY_SIZE;
+
+        // Clear the sequence number first so a half written entry is never mistaken for a complete one
+        LONG.setVolatile(buffer, offset, 0L);
+        buffer.putLong(offset + 8, clockMicros.getAsLong());
+        buffer.putInt(offset + 16, machine);
+        buffer.putInt(offset + 20, from);
+        buffer.putInt(offset + 24, to);
+        buffer.putInt(offset + 28, guard);
+        LONG.setRelease(buffer, offset, sequence);
+    }
+
+    /**
+     * Writes the mapped pages out to disk. Only needed to survive the whole machine losing power, the file already
+     * survives the JVM exiting without this.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeName(int machine, int state, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        int recordSize = 10 + length;
+
+        if (namesUsed + recordSize > namesCapacity) {
+            return;
+        }
+
+        int offset = HEADER_SIZE + namesUsed;
+        buffer.putInt(offset, machine);
+        buffer.putInt(offset + 4, state);
+        buffer.putShort(offset + 8, (short) length);
+        buffer.put(offset + 10, bytes, 0, length);
+
+        namesUsed += recordSize;
+        INT.setVolatile(buffer, NAMES_USED_OFFSET, namesUsed);
+    }
+
+    /**
+     * Reads back a flight recorder file, usually the one left behind by the previous run.
+     *
+     * @throws IOException if the file can't be read or wasn't written by a flight recorder
+     */
+    public static Recording read(Path path) throws IOException {
+        ByteBuffer file;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a flight recorder file");
+            }
+
+            file = ByteBuffer.allocate((int) channel.size());
+            while (file.hasRemaining() && channel.read(file) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            file.flip();
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (file.getInt(MAGIC_OFFSET) != MAGIC || file.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException(path + " is not a flight recorder file");
+        }
+
+        int capacity = file.getInt(CAPACITY_OFFSET);
+        int namesCapacity = file.getInt(NAMES_CAPACITY_OFFSET);
+        int namesUsed = Math.min(file.getInt(NAMES_USED_OFFSET), namesCapacity);
+        int entriesOffset = HEADER_SIZE + namesCapacity;
+
+        if (capacity <= 0 || (long) entriesOffset + (long) capacity * ENTRY_SIZE > file.limit()) {
+            throw new IOException(path + " is truncated");
+        }
+
+        Map<Integer, String> machineNames = new HashMap<>();
+        Map<Integer, Map<Integer, String>> stateNames = new HashMap<>();
+        int offset = HEADER_SIZE;
+        while (offset + 10 <= HEADER_SIZE + namesUsed) {
+            int machine = file.getInt(offset);
+            int state = file.getInt(offset + 4);
+            int length = file.getShort(offset + 8);
+            if (offset + 10 + length > HEADER_SIZE + namesUsed) {
+                break;
+            }
+
+            String name = new String(file.array(), offset + 10, length, StandardCharsets.UTF_8);
+            if (state == -1) {
+                machineNames.put(machine, name);
+            } else {
+                stateNames.computeIfAbsent(machine, k -> new HashMap<>()).put(state, name);
+            }
+
+            offset += 10 + length;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            int entryOffset = entriesOffset + slot * ENTRY_SIZE;
+            long sequence = file.getLong(entryOffset);
+
+            // Empty slots, and slots that were in the middle of being written, don't belong where they claim to
+            if (sequence <= 0 || (sequence - 1) % capacity != slot) {
+                continue;
+            }
+
+            entries.add(new Entry(
+                    sequence,
+                    file.getLong(entryOffset + 8),
+                    file.getInt(entryOffset + 16),
+                    file.getInt(entryOffset + 20),
+                    file.getInt(entryOffset + 24),
+                    file.getInt(entryOffset + 28)
+            ));
+        }
+        entries.sort(Comparator.comparingLong(Entry::sequence));
+
+        return new Recording(Collections.unmodifiableList(entries), machineNames, stateNames);
+    }
+}
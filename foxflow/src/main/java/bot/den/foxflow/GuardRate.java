@@ -0,0 +1,128 @@
+package bot.den.foxflow;
+
+import java.time.Duration;
+
+/**
+ * How often a guard should actually be evaluated. In between evaluations, polling reuses the guard's last result.
+ * <p>
+ * Useful for conditions that change slowly, like battery voltage or match time, where asking every loop is wasted
+ * work. Guards sharing a rate are spread out over different polls, based on the order they were registered, so they
+ * don't all land on the same loop. Entering the state a guard leaves from always evaluates it straight away, so a
+ * transition never fires off a result from the last time the state machine was in that state. Changes that leave that
+ * state active, like another field of a record changing, keep the guard on its schedule.
+ */
+public final class GuardRate {
+    // Time based guards are spread over this many slices of their period
+    private static final int TIME_PHASES = 8;
+
+    private final int everyTicks;
+    private final long periodNanos;
+
+    private GuardRate(int everyTicks, long periodNanos) {
+        this.everyTicks = everyTicks;
+        this.periodNanos = periodNanos;
+    }
+
+    /**
+     * Evaluates the guard on one poll out of every {@code ticks}.
+     */
+    public static GuardRate everyTicks(int ticks) {
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("A guard needs to be evaluated at least once every tick count");
+        }
+
+        return new GuardRate(ticks, 0);
+    }
+
+    /**
+     * Evaluates the guard at most once per {@code period}.
+     */
+    public static GuardRate every(Duration period) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("The period between guard evaluations must be positive");
+        }
+
+        return new GuardRate(0, period.toNanos());
+    }
+
+    /**
+     * Called by the generated state machines to keep track of one guard evaluated at this rate.
+     *
+     * @param phase spreads guards with the same rate apart, usually the guard id
+     */
+    public Schedule schedule(int phase) {
+        return new Schedule(this, phase);
+    }
+
+    /**
+     * When one guard is next due, and what it said last time
+     */
+    public static final class Schedule {
+        private final int everyTicks;
+        private final long periodNanos;
+        private final int phase;
+
+        private boolean evaluated;
+        private boolean result;
+        private long dueNanos;
+
+        private Schedule(GuardRate rate, int phase) {
+            this.everyTicks = rate.everyTicks;
+            this.periodNanos = rate.periodNanos;
+            this.phase = phase;
+        }
+
+        /**
+         * @param tick how many times the state machine has been polled
+         * @return whether the guard needs to be evaluated on this poll
+         */
+        public boolean due(long tick) {
+            if (!evaluated) {
+                return true;
+            }
+
+            if (everyTicks > 0) {
+                return (tick + phase) % everyTicks == 0;
+            }
+
+            return System.nanoTime() - dueNanos >= 0;
+        }
+
+        /**
+         * Stores a fresh result, and works out when the next one is due.
+         */
+        public void update(boolean result) {
+            this.result = result;
+
+            if (periodNanos > 0) {
+                long now = System.nanoTime();
+                if (!evaluated) {
+                    // Pull the second evaluation forward by part of a period so guards registered together drift apart
+                    dueNanos = now + periodNanos - periodNanos / TIME_PHASES * (phase % TIME_PHASES);
+                } else {
+                    dueNanos += periodNanos;
+                    if (now - dueNanos >= 0) {
+                        // The guard wasn't polled for a while, start counting from now
+                        dueNanos = now + periodNanos;
+                    }
+                }
+            }
+
+            this.evaluated = true;
+        }
+
+        /**
+         * @return the last result given to {@link #update(boolean)}
+         */
+        public boolean result() {
+            return result;
+        }
+
+        /**
+         * Forgets the last result, so the guard is evaluated on the next poll.
+         */
+        public void invalidate() {
+            evaluated = false;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package bot.den.foxflow;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The guard results a state machine saw, one tick per poll, so the state machine can be driven through exactly the same
+ * decisions again later.
+ * <p>
+ * Pass a recording to {@code recordGuards} on a state machine to capture which guards fired on every poll, along with
+ * the driver station mode for state machines that track a {@link RobotState}. Give it to {@code replay} on a state
+ * machine with the same transitions registered in the same order, and every tick is replayed without calling any of the
+ * guards or reading the driver station.
+ * <p>
+ * Events passed to {@code fire} are recorded too, and fired again at the start of the poll that came after them. Events
+ * fired after the last poll are kept at the end of the recording, and fired once every tick has been replayed.
+ * <p>
+ * Guards are identified by the order they were registered with {@code transitionWhen}, and events by the order they
+ * were first registered with {@code transitionOn}, so a replay only makes sense against code that registers its
+ * transitions in the same order as the code that made the recording.
+ */
+public final class GuardRecording {
+    private static final int MAGIC = 0x46584752; // "FXGR"
+    private static final int VERSION = 2;
+
+    // Each tick is laid out as [driver station mode, number of guards that fired, number of events, event ids...,
+    // guard ids...]
+    private int[] data = new int[256];
+    private int size;
+    private int ticks;
+    private int currentTick = -1;
+    // Events fired since the last tick started, they go into the next one
+    private int[] events = new int[8];
+    private int eventCount;
+
+    /**
+     * Steps through the ticks of a recording
+     */
+    public final class Player {
+        private int offset = -1;
+        private int nextOffset;
+
+        /**
+         * Moves to the next tick.
+         *
+         * @return false once every tick has been played
+         */
+        public boolean next() {
+            if (nextOffset >= size) {
+                return false;
+            }
+
+            offset = nextOffset;
+            nextOffset = offset + 3 + data[offset + 1] + data[offset + 2];
+            return true;
+        }
+
+        /**
+         * @return whether the guard fired during the current tick
+         */
+        public boolean fired(int guardId) {
+            int count = data[offset + 1];
+            int start = offset + 3 + data[offset + 2];
+            for (int i = 0; i < count; i++) {
+                if (data[start + i] == guardId) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * @return how many events were fired before the guards of the current tick
+         */
+        public int eventCount() {
+            return data[offset + 2];
+        }
+
+        /**
+         * @return the id of an event fired before the guards of the current tick
+         */
+        public int event(int index) {
+            return data[offset + 3 + index];
+        }
+
+        /**
+         * @return how many events were fired after the last tick
+         */
+        public int trailingEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * @return the id of an event fired after the last tick
+         */
+        public int trailingEvent(int index) {
+            return events[index];
+        }
+
+        /**
+         * @return the driver station mode during the current tick, see {@link DriverStationMode}
+         */
+        public int control() {
+            return data[offset];
+        }
+    }
+
+    /**
+     * @return a new player positioned before the first tick
+     */
+    public Player player() {
+        return new Player();
+    }
+
+    /**
+     * @return how many ticks have been recorded
+     */
+    public int ticks() {
+        return ticks;
+    }
+
+    // The methods below are called by the generated state machines
+
+    public void startTick() {
+        ensureCapacity(3 + eventCount);
+        currentTick = size;
+        data[size++] = 0;
+        data[size++] = 0;
+        data[size++] = eventCount;
+        System.arraycopy(events, 0, data, size, eventCount);
+        size += eventCount;
+        eventCount = 0;
+        ticks++;
+    }
+
+    public void control(int control) {
+        data[currentTick] = control;
+    }
+
+    public void fired(int guardId) {
+        ensureCapacity(1);
+        data[size++] = guardId;
+        data[currentTick + 1]++;
+    }
+
+    public void event(int eventId) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+
+        events[eventCount++] = eventId;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + additional));
+        }
+    }
+
+    /**
+     * Writes the recording in a compact binary form that {@link #read(InputStream)} understands.
+     */
+    public void write(OutputStream out) throws IOException {
+        var stream = new DataOutputStream(new BufferedOutputStream(out));
+        stream.writeInt(MAGIC);
+        stream.writeInt(VERSION);
+        stream.writeInt(ticks);
+        stream.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            stream.writeInt(data[i]);
+        }
+        stream.writeInt(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            stream.writeInt(events[i]);
+        }
+        stream.flush();
+    }
+
+    /**
+     * Reads a recording written by {@link #write(OutputStream)}.
+     *
+     * @throws IOException if the stream can't be read or doesn't hold a guard recording
+     */
+    public static GuardRecording read(InputStream in) throws IOException {
+        var stream = new DataInputStream(new BufferedInputStream(in));
+        if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+            throw new IOException("Not a guard recording");
+        }
+
+        var recording = new GuardRecording();
+        recording.ticks = stream.readInt();
+        recording.size = stream.readInt();
+        if (recording.ticks < 0 || recording.size < 0) {
+            throw new IOException("Not a guard recording");
+        }
+
+        recording.data = new int[Math.max(recording.size, 3)];
+        for (int i = 0; i < recording.size; i++) {
+            recording.data[i] = stream.readInt();
+        }
+
+        recording.eventCount = stream.readInt();
+        if (recording.eventCount < 0) {
+            throw new IOException("Not a guard recording");
+        }
+
+        recording.events = new int[Math.max(recording.eventCount, 8)];
+        for (int i = 0; i < recording.eventCount; i++) {
+            recording.events[i] = stream.readInt();
+        }
+
+        return recording;
+    }
+}
@@ -0,0 +1,47 @@
+package bot.den.foxflow;
+
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map that only keeps its most recently used entries, dropping the least recently used one once it's full.
+ * <p>
+ * Record state machines remember what they work out for each full state they visit, which is bounded by the states a
+ * robot actually goes through rather than by every value the record could hold. Keeping those in an LRU cache means a
+ * record with many possible values can't grow them without limit, while the handful of states a mechanism cycles
+ * through stay cached. Looking up an entry that's already there doesn't allocate.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class LruCache<K, V> extends LinkedHashMap<K, V> {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    /**
+     * @param capacity how many entries to keep
+     */
+    public LruCache(int capacity) {
+        super(16, 0.75f, true);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("An LRU cache needs room for at least one entry");
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return how many entries are kept before the least recently used one is dropped
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+    }
+}
@@ -0,0 +1,39 @@
+package bot.den.foxflow;
+
+/**
+ * Implemented by every generated state machine, so they can be polled together by a {@link StateMachineGroup}.
+ *
+ * @param <T> the state type of the state machine
+ */
+public interface PollableStateMachine<T> {
+    /**
+     * @return the state the state machine is in
+     */
+    T currentState();
+
+    /**
+     * Checks the guards and the driver station, and takes a transition if one is ready.
+     */
+    void poll();
+
+    /**
+     * Same as {@link #poll()}, but using a driver station mode that was already read, so several state machines can
+     * share one read.
+     *
+     * @param driverStationMode the mode returned by {@link #readDriverStation()}
+     */
+    void poll(int driverStationMode);
+
+    /**
+     * @return whether this state machine follows the driver station, which is the case for records with a
+     * {@link RobotState} field
+     */
+    boolean readsDriverStation();
+
+    /**
+     * Reads the current driver station mode. This goes through the HAL, so it's worth sharing between state machines.
+     *
+     * @return the mode, as {@link DriverStationMode} flags
+     */
+    int readDriverStation();
+}
@@ -15,4 +15,23 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 public @interface StateMachine {
+    /**
+     * Controls how the helper classes for a record state machine are generated. Enums ignore this setting.
+     */
+    Generation generation() default Generation.PERMUTATIONS;
+
+    enum Generation {
+        /**
+         * Every combination of record fields gets its own data class and {@code state}/{@code to} overloads. This is
+         * the most convenient to use, but the generated code doubles with every field added to the record.
+         */
+        PERMUTATIONS,
+
+        /**
+         * Only single fields and the full record get their own data class and overloads. Any other combination of
+         * fields is built with the {@code of}/{@code with} methods on the generated data interface. The generated code
+         * grows linearly with the number of fields, which keeps wide records practical to compile.
+         */
+        LINEAR
+    }
 }
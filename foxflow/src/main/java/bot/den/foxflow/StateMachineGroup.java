@@ -0,0 +1,199 @@
+package bot.den.foxflow;
+
+import java.util.*;
+
+/**
+ * Polls a set of state machines in a single pass.
+ * <p>
+ * The driver station mode is read once per pass and shared by every state machine that follows it, instead of each
+ * one going through the HAL on its own. Call {@link #poll()} once per loop, usually from {@code robotPeriodic}, in place
+ * of polling each state machine or scheduling a poll command for each of them.
+ * <p>
+ * State machines are polled in the order they were added, except that a state machine is always polled after the
+ * state machines it depends on. When one state machine's guards look at another, declaring that with
+ * {@link #dependsOn} lets it react on the same loop instead of the next one. Like the state machines themselves, a
+ * group should only be used from the polling thread.
+ */
+public final class StateMachineGroup {
+    private final List<PollableStateMachine<?>> added = new ArrayList<>();
+    private final Map<PollableStateMachine<?>, Set<PollableStateMachine<?>>> dependencies = new IdentityHashMap<>();
+
+    // The polling order, with every state machine after the ones it depends on
+    private PollableStateMachine<?>[] machines = new PollableStateMachine<?>[0];
+    private PollableStateMachine<?> driverStationSource;
+
+    private long polls;
+    private long pollNanos;
+    private long lastPollNanos;
+    private long maxPollNanos;
+
+    public StateMachineGroup(PollableStateMachine<?>... machines) {
+        for (var machine : machines) {
+            add(machine);
+        }
+    }
+
+    /**
+     * Adds a state machine to the end of the group.
+     *
+     * @return this group, for chaining
+     */
+    public StateMachineGroup add(PollableStateMachine<?> machine) {
+        if (dependencies.containsKey(machine)) {
+            throw new IllegalArgumentException("The state machine is already in this group");
+        }
+
+        added.add(machine);
+        dependencies.put(machine, new LinkedHashSet<>());
+        machines = sort();
+
+        if (driverStationSource == null && machine.readsDriverStation()) {
+            driverStationSource = machine;
+        }
+
+        return this;
+    }
+
+    /**
+     * Makes sure {@code dependent} is always polled after {@code dependency} in each pass, so that if its guards look
+     * at {@code dependency}, they see the state it moved to on this loop.
+     *
+     * @return this group, for chaining
+     * @throws IllegalArgumentException if either state machine isn't in the group, or the dependency would make a cycle
+     */
+    public StateMachineGroup dependsOn(PollableStateMachine<?> dependent, PollableStateMachine<?> dependency) {
+        if (!dependencies.containsKey(dependent) || !dependencies.containsKey(dependency)) {
+            throw new IllegalArgumentException("Both state machines need to be added to the group first");
+        }
+
+        if (!dependencies.get(dependent).add(dependency)) {
+            return this;
+        }
+
+        try {
+            machines = sort();
+        } catch (IllegalArgumentException e) {
+            dependencies.get(dependent).remove(dependency);
+            throw e;
+        }
+
+        return this;
+    }
+
+    /**
+     * A depth first topological sort, visiting state machines in the order they were added so the order only changes
+     * where a dependency requires it.
+     */
+    private PollableStateMachine<?>[] sort() {
+        List<PollableStateMachine<?>> order = new ArrayList<>(added.size());
+        Set<PollableStateMachine<?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<PollableStateMachine<?>> path = new ArrayList<>();
+
+        for (var machine : added) {
+            visit(machine, visited, path, order);
+        }
+
+        return order.toArray(new PollableStateMachine<?>[0]);
+    }
+
+    private void visit(
+            PollableStateMachine<?> machine,
+            Set<PollableStateMachine<?>> visited,
+            List<PollableStateMachine<?>> path,
+            List<PollableStateMachine<?>> order
+    ) {
+        if (visited.contains(machine)) {
+            return;
+        }
+
+        int cycleStart = indexOf(path, machine);
+        if (cycleStart != -1) {
+            var cycle = new StringBuilder();
+            for (int i = cycleStart; i < path.size(); i++) {
+                cycle.append(path.get(i).getClass().getSimpleName()).append(" -> ");
+            }
+            cycle.append(machine.getClass().getSimpleName());
+
+            throw new IllegalArgumentException("State machine dependencies form a cycle: " + cycle);
+        }
+
+        path.add(machine);
+        for (var dependency : dependencies.get(machine)) {
+            visit(dependency, visited, path, order);
+        }
+        path.remove(path.size() - 1);
+
+        visited.add(machine);
+        order.add(machine);
+    }
+
+    private static int indexOf(List<PollableStateMachine<?>> path, PollableStateMachine<?> machine) {
+        for (int i = 0; i < path.size(); i++) {
+            if (path.get(i) == machine) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Polls every state machine in the group once.
+     */
+    public void poll() {
+        long start = System.nanoTime();
+
+        var machines = this.machines;
+        int driverStationMode = driverStationSource == null ? 0 : driverStationSource.readDriverStation();
+        for (var machine : machines) {
+            machine.poll(driverStationMode);
+        }
+
+        long nanos = System.nanoTime() - start;
+        polls++;
+        pollNanos += nanos;
+        lastPollNanos = nanos;
+        if (nanos > maxPollNanos) {
+            maxPollNanos = nanos;
+        }
+    }
+
+    /**
+     * @return how many state machines are in the group
+     */
+    public int size() {
+        return machines.length;
+    }
+
+    public long polls() {
+        return polls;
+    }
+
+    /**
+     * @return how long the last pass over the group took
+     */
+    public long lastPollNanos() {
+        return lastPollNanos;
+    }
+
+    public long maxPollNanos() {
+        return maxPollNanos;
+    }
+
+    /**
+     * @return the average time a pass over the group took, or zero if it hasn't been polled
+     */
+    public double averagePollNanos() {
+        return polls == 0 ? 0 : (double) pollNanos / polls;
+    }
+
+    /**
+     * Sets the timing back to zero.
+     */
+    public void resetTiming() {
+        polls = 0;
+        pollNanos = 0;
+        lastPollNanos = 0;
+        maxPollNanos = 0;
+    }
+}
@@ -0,0 +1,177 @@
+package bot.den.foxflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counters describing what a generated state machine has been doing.
+ * <p>
+ * Metrics are off until {@code enableMetrics()} is called on the state machine. Once enabled, every counter is a plain
+ * primitive updated by the state machine as it polls, so recording them does not allocate in steady state. The only
+ * allocation is the first time a particular edge is taken.
+ * <p>
+ * The counters are not synchronized. Read them from the same thread that polls the state machine, usually the main
+ * robot loop.
+ *
+ * @param <T> the state type of the state machine
+ */
+public final class StateMachineMetrics<T> {
+    private long polls;
+    private long pollNanos;
+    private long maxPollNanos;
+    private long guardEvaluations;
+    private long transitions;
+    private long failLoudlyTrips;
+    private long commandsScheduled;
+
+    private final Map<T, Map<T, long[]>> edgeTransitions = new HashMap<>();
+
+    /**
+     * A copy of the counters at one point in time. Reuse the same snapshot to read metrics without allocating.
+     */
+    public static final class Snapshot {
+        private long polls;
+        private long pollNanos;
+        private long maxPollNanos;
+        private long guardEvaluations;
+        private long transitions;
+        private long failLoudlyTrips;
+        private long commandsScheduled;
+
+        public long polls() {
+            return polls;
+        }
+
+        public long pollNanos() {
+            return pollNanos;
+        }
+
+        public long maxPollNanos() {
+            return maxPollNanos;
+        }
+
+        /**
+         * @return the average time a poll took, or zero if the state machine hasn't been polled
+         */
+        public double averagePollNanos() {
+            return polls == 0 ? 0 : (double) pollNanos / polls;
+        }
+
+        public long guardEvaluations() {
+            return guardEvaluations;
+        }
+
+        public long transitions() {
+            return transitions;
+        }
+
+        public long failLoudlyTrips() {
+            return failLoudlyTrips;
+        }
+
+        public long commandsScheduled() {
+            return commandsScheduled;
+        }
+    }
+
+    /**
+     * Copies the current counters into the given snapshot.
+     *
+     * @param snapshot the snapshot to overwrite
+     * @return the same snapshot, for chaining
+     */
+    public Snapshot snapshot(Snapshot snapshot) {
+        snapshot.polls = polls;
+        snapshot.pollNanos = pollNanos;
+        snapshot.maxPollNanos = maxPollNanos;
+        snapshot.guardEvaluations = guardEvaluations;
+        snapshot.transitions = transitions;
+        snapshot.failLoudlyTrips = failLoudlyTrips;
+        snapshot.commandsScheduled = commandsScheduled;
+        return snapshot;
+    }
+
+    /**
+     * @return a new snapshot of the current counters
+     */
+    public Snapshot snapshot() {
+        return snapshot(new Snapshot());
+    }
+
+    /**
+     * @return how many times the state machine moved from one exact state to another
+     */
+    public long transitionCount(T from, T to) {
+        var toMap = edgeTransitions.get(from);
+        if (toMap == null) {
+            return 0;
+        }
+
+        var count = toMap.get(to);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Sets every counter back to zero. Edges that have already been taken keep their slot, so counting them again
+     * doesn't allocate.
+     */
+    public void reset() {
+        polls = 0;
+        pollNanos = 0;
+        maxPollNanos = 0;
+        guardEvaluations = 0;
+        transitions = 0;
+        failLoudlyTrips = 0;
+        commandsScheduled = 0;
+
+        for (var toMap : edgeTransitions.values()) {
+            for (var count : toMap.values()) {
+                count[0] = 0;
+            }
+        }
+    }
+
+    // The methods below are called by the generated state machines
+
+    public void recordPoll(long nanos) {
+        polls++;
+        pollNanos += nanos;
+        if (nanos > maxPollNanos) {
+            maxPollNanos = nanos;
+        }
+    }
+
+    public void recordGuardEvaluation() {
+        guardEvaluations++;
+    }
+
+    public void recordGuardEvaluations(int count) {
+        guardEvaluations += count;
+    }
+
+    public void recordTransition(T from, T to) {
+        transitions++;
+
+        var toMap = edgeTransitions.get(from);
+        if (toMap == null) {
+            toMap = new HashMap<>();
+            edgeTransitions.put(from, toMap);
+        }
+
+        var count = toMap.get(to);
+        if (count == null) {
+            count = new long[1];
+            toMap.put(to, count);
+        }
+
+        count[0]++;
+    }
+
+    public void recordFailLoudly() {
+        failLoudlyTrips++;
+    }
+
+    public void recordCommandsScheduled(int count) {
+        commandsScheduled += count;
+    }
+}
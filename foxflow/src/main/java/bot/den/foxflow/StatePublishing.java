@@ -0,0 +1,68 @@
+package bot.den.foxflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Controls what a state machine publishes to NetworkTables whenever its state changes. Everything is published under
+ * {@code StateMachine/<name>}, where the name defaults to the state type's simple name, followed by a number for every
+ * instance of that type after the first.
+ */
+public enum StatePublishing {
+    /**
+     * Publishes the current state's {@code toString()} to {@code currentState}. This is the default.
+     */
+    NAME,
+
+    /**
+     * Publishes a number for the current state to {@code currentStateId}, with the name of every state published to
+     * {@code stateNames} at the index of its number. Enum states are numbered by ordinal, record states in the order the
+     * state machine first sees them.
+     */
+    ID,
+
+    /**
+     * Doesn't publish anything.
+     */
+    NONE;
+
+    /**
+     * How many state machines publish under each name
+     */
+    private static final Map<String, Integer> names = new HashMap<>();
+
+    /**
+     * Claims a name for a new state machine that no other state machine is using yet. The first one gets the name as
+     * is, the ones after it get {@code _2}, {@code _3} and so on added to it.
+     *
+     * @param typeName the simple name of the state type
+     * @return a name nothing else publishes under, already claimed
+     */
+    public static synchronized String claimDefaultName(String typeName) {
+        String name = typeName;
+        for (int i = 2; names.containsKey(name); i++) {
+            name = typeName + "_" + i;
+        }
+        names.put(name, 1);
+        return name;
+    }
+
+    /**
+     * Records that a state machine publishes under a name.
+     *
+     * @param name the name being published under
+     * @return false if another state machine already publishes under this name
+     */
+    public static synchronized boolean claimName(String name) {
+        return names.merge(name, 1, Integer::sum) == 1;
+    }
+
+    /**
+     * Records that a state machine stopped publishing under a name.
+     *
+     * @param name a name previously given to {@link #claimName}
+     */
+    public static synchronized void releaseName(String name) {
+        names.computeIfPresent(name, (key, count) -> count == 1 ? null : count - 1);
+    }
+}
@@ -0,0 +1,331 @@
+package bot.den.foxflow;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps track of pending timeouts in a hierarchical timer wheel, so moving time forward costs the same no matter how
+ * many timeouts are armed.
+ * <p>
+ * Timeouts are kept in four levels of 64 slots. The first level holds anything due within the next 64 ticks, one slot
+ * per tick, and each level after that covers 64 times as long. When the first level wraps around, the next slot of the
+ * level above is spread out over the level below it. A timeout only ever moves down a level a few times, and
+ * arming or cancelling one is constant time.
+ * <p>
+ * The wheel doesn't read a clock itself. Whoever polls it passes in the current time in microseconds, which for the
+ * generated state machines is the FPGA timestamp.
+ * <p>
+ * Every generated state machine uses the {@linkplain #shared() shared} wheel, whichever thread it's polled from, so the
+ * wheel is thread safe. Advancing, arming and cancelling hold the wheel's lock, which is uncontended as long as the
+ * state machines are polled from one thread. A state machine polled from another thread can read the clock just before
+ * the wheel is moved past that time, so going back by less than one revolution of the first level is ignored instead
+ * of being taken for a reset clock.
+ */
+public final class TimerWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    // Anything further out than the last level can reach waits here until the top level wraps around
+    private static final int OVERFLOW = LEVELS * SLOTS;
+    private static final TimerWheel SHARED = new TimerWheel(Duration.ofMillis(1));
+
+    private final long tickMicros;
+    private final Timeout[] buckets = new Timeout[OVERFLOW + 1];
+
+    private long currentTick;
+    private boolean started;
+    private int size;
+    private int firstLevelSize;
+
+    /**
+     * @param resolution how far apart ticks of the wheel are. Timeouts fire on the first tick after they're due.
+     */
+    public TimerWheel(Duration resolution) {
+        if (resolution.toNanos() < 1000) {
+            throw new IllegalArgumentException("The resolution of a timer wheel must be at least a microsecond");
+        }
+
+        this.tickMicros = resolution.toNanos() / 1000;
+    }
+
+    /**
+     * The wheel used by every generated state machine, with a resolution of one millisecond.
+     */
+    public static TimerWheel shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates a timeout on this wheel. It doesn't start counting down until it is armed.
+     *
+     * @param delay how long after being armed the timeout expires
+     */
+    public Timeout timeout(Duration delay) {
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("The delay of a timeout can't be negative");
+        }
+
+        return new Timeout(this, delay.toNanos() / 1000);
+    }
+
+    /**
+     * @return how many timeouts are armed and haven't expired yet
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Moves the wheel forward to {@code nowMicros}, expiring every timeout that is due. Calling this again with the same
+     * time does nothing, so every state machine sharing the wheel can call it on each poll.
+     */
+    public synchronized void advance(long nowMicros) {
+        long nowTick = Math.floorDiv(nowMicros, tickMicros);
+        if (!started) {
+            currentTick = nowTick;
+            started = true;
+            return;
+        }
+
+        if (nowTick < currentTick) {
+            // Either another thread moved the wheel forward after this time was read, or the clock was reset, such as
+            // by restarting simulation timing
+            if (currentTick - nowTick > SLOTS) {
+                rebase(nowTick);
+            }
+            return;
+        }
+
+        while (currentTick < nowTick) {
+            if (size == 0) {
+                currentTick = nowTick;
+                return;
+            }
+
+            if (firstLevelSize == 0) {
+                // Nothing can expire before the first level wraps around, skip straight to the end of it
+                long lastTickOfLevel = currentTick | SLOT_MASK;
+                if (lastTickOfLevel >= nowTick) {
+                    currentTick = nowTick;
+                    return;
+                }
+
+                currentTick = lastTickOfLevel;
+            }
+
+            tick();
+        }
+    }
+
+    private void tick() {
+        currentTick++;
+        if ((currentTick & SLOT_MASK) == 0) {
+            cascade(1);
+        }
+
+        int bucket = (int) (currentTick & SLOT_MASK);
+        var timeout = buckets[bucket];
+        buckets[bucket] = null;
+
+        while (timeout != null) {
+            var next = timeout.next;
+            timeout.unlink();
+            timeout.expired = true;
+            size--;
+            firstLevelSize--;
+            timeout = next;
+        }
+    }
+
+    private void cascade(int level) {
+        int slot = (int) (currentTick >>> (level * SLOT_BITS)) & SLOT_MASK;
+        if (slot == 0) {
+            // Higher levels are spread out first, since they may add to the slot we're about to spread out
+            if (level + 1 < LEVELS) {
+                cascade(level + 1);
+            } else {
+                reinsert(OVERFLOW);
+            }
+        }
+
+        reinsert(level * SLOTS + slot);
+    }
+
+    private void reinsert(int bucket) {
+        var timeout = buckets[bucket];
+        buckets[bucket] = null;
+
+        while (timeout != null) {
+            var next = timeout.next;
+            timeout.unlink();
+            size--;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void rebase(long nowTick) {
+        Timeout pending = null;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            var timeout = buckets[bucket];
+            buckets[bucket] = null;
+
+            while (timeout != null) {
+                var next = timeout.next;
+                timeout.unlink();
+                // Whatever time was left on a timeout is kept across the jump
+                timeout.deadline = timeout.deadline - currentTick + nowTick;
+                timeout.next = pending;
+                pending = timeout;
+                timeout = next;
+            }
+        }
+
+        currentTick = nowTick;
+        size = 0;
+        firstLevelSize = 0;
+
+        while (pending != null) {
+            var next = pending.next;
+            pending.next = null;
+            insert(pending);
+            pending = next;
+        }
+    }
+
+    private synchronized void arm(Timeout timeout, long nowMicros) {
+        advance(nowMicros);
+        if (timeout.bucket >= 0) {
+            remove(timeout);
+        }
+
+        // Round up, so a timeout never fires before its delay has passed
+        long subTick = nowMicros - currentTick * tickMicros;
+        if (subTick < 0 || subTick >= tickMicros) {
+            subTick = 0;
+        }
+        timeout.deadline = currentTick - Math.floorDiv(-(subTick + timeout.delayMicros), tickMicros);
+        timeout.expired = false;
+
+        if (timeout.deadline <= currentTick) {
+            timeout.expired = true;
+            return;
+        }
+
+        insert(timeout);
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = timeout.deadline - currentTick;
+        int bucket = OVERFLOW;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << ((level + 1) * SLOT_BITS)) {
+                bucket = level * SLOTS + ((int) (timeout.deadline >>> (level * SLOT_BITS)) & SLOT_MASK);
+                break;
+            }
+        }
+
+        if (bucket < SLOTS) {
+            firstLevelSize++;
+        }
+
+        timeout.bucket = bucket;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    private synchronized void cancel(Timeout timeout) {
+        if (timeout.bucket >= 0) {
+            remove(timeout);
+        }
+
+        timeout.expired = false;
+    }
+
+    private synchronized boolean armed(Timeout timeout) {
+        return timeout.bucket >= 0;
+    }
+
+    private void remove(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+
+        if (timeout.bucket < SLOTS) {
+            firstLevelSize--;
+        }
+
+        timeout.unlink();
+        size--;
+    }
+
+    /**
+     * A single timeout on a {@link TimerWheel}. Reads as true once it has expired, until it is armed again or cancelled.
+     */
+    public static final class Timeout implements BooleanSupplier {
+        private final TimerWheel wheel;
+        private final long delayMicros;
+
+        private Timeout previous;
+        private Timeout next;
+        // Only changed while holding the wheel's lock
+        private int bucket = -1;
+        private long deadline;
+        private volatile boolean expired;
+
+        private Timeout(TimerWheel wheel, long delayMicros) {
+            this.wheel = wheel;
+            this.delayMicros = delayMicros;
+        }
+
+        /**
+         * Starts counting down from {@code nowMicros}. Arming a timeout that's already armed starts it over.
+         */
+        public void arm(long nowMicros) {
+            wheel.arm(this, nowMicros);
+        }
+
+        /**
+         * Stops the timeout, and clears it if it already expired.
+         */
+        public void cancel() {
+            wheel.cancel(this);
+        }
+
+        /**
+         * @return whether the timeout is counting down
+         */
+        public boolean armed() {
+            return wheel.armed(this);
+        }
+
+        /**
+         * @return whether the timeout has expired since it was last armed
+         */
+        public boolean expired() {
+            return expired;
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            return expired;
+        }
+
+        private void unlink() {
+            previous = null;
+            next = null;
+            bucket = -1;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package bot.den.foxflow.exceptions;
 
+import java.io.Serial;
+
 /**
  * Thrown when a transition marked with {@code failLoudly()} is attempted.
  * <p>
@@ -7,6 +9,9 @@ package bot.den.foxflow.exceptions;
  * unexpected state transition is attempted.
  */
 public class FailLoudlyException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * Creates an exception for a transition that should not be allowed
      *
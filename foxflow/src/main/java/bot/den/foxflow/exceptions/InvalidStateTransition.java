@@ -1,5 +1,7 @@
 package bot.den.foxflow.exceptions;
 
+import java.io.Serial;
+
 /**
  * Thrown when a state transition is not allowed.
  * <p>
@@ -11,6 +13,9 @@ package bot.den.foxflow.exceptions;
  * </ul>
  */
 public class InvalidStateTransition extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * Creates an exception for an invalid state transition.
      *
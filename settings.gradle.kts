@@ -1,4 +1,5 @@
 rootProject.name = "FoxFlow"
 include(":foxflow-annotations")
 include(":foxflow")
-include(":unit-tests")
\ No newline at end of file
+include(":unit-tests")
+include(":foxflow-benchmarks")
\ No newline at end of file
@@ -0,0 +1,16 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.RobotState;
+import bot.den.foxflow.StateMachine;
+
+@StateMachine(generation = StateMachine.Generation.LINEAR)
+public record LinearRecord(
+        MultiStateEnum multiState,
+        BasicEnum basic,
+        Mode mode,
+        RobotState robotState
+) {
+    enum Mode {
+        IDLE, ACTIVE
+    }
+}
@@ -0,0 +1,23 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.StateMachine;
+
+/**
+ * Four fields is the first width where a record has permutations that skip over fields in the middle, e.g. only the
+ * first and last field, so this makes sure every one of them gets a data class.
+ */
+@StateMachine
+public record WideRecord(
+        MultiStateEnum multiState,
+        BasicEnum basic,
+        Left left,
+        Right right
+) {
+    enum Left {
+        UP, DOWN
+    }
+
+    enum Right {
+        UP, DOWN
+    }
+}
@@ -0,0 +1,219 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.AsyncGuard;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncGuardTest {
+    // Runs background work only when the test asks it to
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.poll().run();
+        }
+    }
+
+    @Test
+    void readsTheLastResult() {
+        var condition = new AtomicBoolean(true);
+        var guard = new AsyncGuard(condition::get, null, pending::add);
+
+        // Nothing has been measured yet
+        assertFalse(guard.getAsBoolean());
+        assertEquals(1, pending.size());
+
+        runPending();
+        condition.set(false);
+
+        // Still the result from the last evaluation, and a new one has been started
+        assertTrue(guard.getAsBoolean());
+        runPending();
+        assertFalse(guard.getAsBoolean());
+    }
+
+    @Test
+    void onlyRunsOneEvaluationAtATime() {
+        var evaluations = new AtomicInteger();
+        var guard = new AsyncGuard(() -> evaluations.incrementAndGet() > 0, null, pending::add);
+
+        guard.getAsBoolean();
+        guard.getAsBoolean();
+        guard.getAsBoolean();
+        assertEquals(1, pending.size());
+
+        runPending();
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void staleResultsReadAsFalse() throws InterruptedException {
+        var guard = new AsyncGuard(() -> true, Duration.ofMillis(20), pending::add);
+        guard.getAsBoolean();
+        runPending();
+        assertTrue(guard.getAsBoolean());
+
+        // Drop the evaluation that just got started so the result can age
+        pending.clear();
+        Thread.sleep(50);
+        assertFalse(guard.getAsBoolean());
+    }
+
+    @Test
+    void failuresAreRethrownWhenPolled() {
+        var guard = new AsyncGuard(() -> {
+            throw new IllegalStateException("camera unplugged");
+        }, null, pending::add);
+
+        guard.getAsBoolean();
+        runPending();
+
+        var thrown = assertThrows(IllegalStateException.class, guard::getAsBoolean);
+        assertEquals("camera unplugged", thrown.getMessage());
+    }
+
+    @Test
+    void stateMachinesTransitionOnceTheConditionHasBeenMeasured() throws InterruptedException {
+        var release = new CountDownLatch(1);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhenAsync(() -> {
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+
+        // The first poll starts the evaluation but has nothing to read yet
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (machine.currentState() == BasicEnum.START && System.nanoTime() < deadline) {
+            machine.poll();
+        }
+
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void invalidatedResultsReadAsFalseUntilMeasuredAgain() {
+        var guard = new AsyncGuard(() -> true, null, pending::add);
+        guard.getAsBoolean();
+        runPending();
+        pending.clear();
+
+        guard.invalidate();
+        assertFalse(guard.getAsBoolean());
+
+        runPending();
+        assertTrue(guard.getAsBoolean());
+    }
+
+    @Test
+    void evaluationsRunningWhenInvalidatedDontCount() {
+        var invalidateDuringEvaluation = new AtomicBoolean();
+        var holder = new AtomicReference<AsyncGuard>();
+        var guard = new AsyncGuard(() -> {
+            if (invalidateDuringEvaluation.getAndSet(false)) {
+                holder.get().invalidate();
+            }
+            return true;
+        }, null, pending::add);
+        holder.set(guard);
+
+        invalidateDuringEvaluation.set(true);
+        guard.getAsBoolean();
+        runPending();
+        assertFalse(guard.getAsBoolean());
+
+        runPending();
+        assertTrue(guard.getAsBoolean());
+    }
+
+    @Test
+    void recordGuardsKeepTheirMeasurementWhenAnotherFieldChanges() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        var guard = new AsyncGuard(() -> true, null, pending::add);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(guard);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("other");
+
+        machine.poll();
+        runPending();
+        machine.fire("other");
+
+        // MultiStateEnum.A is still active, so the measurement from before the event still counts
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+
+    @Test
+    void sharedGuardsAreOnlyInvalidatedByTheirOwnStates() {
+        var guard = new AsyncGuard(() -> true, null, pending::add);
+        var first = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        first.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionWhen(guard);
+        var second = new BasicEnumStateMachine(BasicEnum.START);
+        second.state(BasicEnum.STATE_B).to(BasicEnum.STATE_D).transitionWhen(guard);
+        second.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+
+        first.poll();
+        runPending();
+
+        // The second machine moves between states that don't use the guard
+        second.poll();
+        assertEquals(BasicEnum.STATE_A, second.currentState());
+
+        first.poll();
+        assertEquals(BasicEnum.STATE_C, first.currentState());
+    }
+
+    @Test
+    void reenteringAStateWaitsForAFreshMeasurement() {
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        var guard = new AsyncGuard(() -> true, null, pending::add);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionWhen(guard);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+
+        // Measure once while in STATE_A, then leave before the result is read
+        machine.poll();
+        runPending();
+        CommandScheduler.getInstance().schedule(machine.transitionTo(BasicEnum.START));
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        // The answer from the last visit doesn't count
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        runPending();
+        machine.poll();
+        assertEquals(BasicEnum.STATE_C, machine.currentState());
+    }
+}
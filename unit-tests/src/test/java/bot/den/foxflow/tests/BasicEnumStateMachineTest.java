@@ -424,6 +424,44 @@ public class BasicEnumStateMachineTest {
         assertEquals(BasicEnum.STATE_A, machine.currentState());
     }
 
+    @Test
+    void multipleTransitionWhenFiringTogetherDoNotMove() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+
+        final AtomicBoolean second = new AtomicBoolean(true);
+
+        // Two different conditions that both fire on the same poll, even though they lead to the same place
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> true);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(second::get);
+
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        // Once only one of them fires, the machine moves
+        second.set(false);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void conflictingTransitionsDoNotMove() {
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+
+        final AtomicBoolean toB = new AtomicBoolean(true);
+
+        // Both of these are valid, so we can't know which one the user wanted
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionWhen(toB::get);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionAlways();
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        // Once only one of them applies, the machine moves again
+        toB.set(false);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_C, machine.currentState());
+    }
+
     @Test
     void canAddTransitionWhileMachineIsRunning() {
         var machine = new BasicEnumStateMachine(BasicEnum.START);
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -300,6 +301,105 @@ public class BasicRecordStateMachineTest {
         assertEquals(InnerEnum.STAR, this.machine.currentState().inner());
     }
 
+    @Test
+    void conflictingTransitionsAreSkippedWhileOthersMerge() {
+        this.machine.state(MultiStateEnum.A, BasicEnum.START).to(MultiStateEnum.B).transitionAlways();
+        // This one disagrees with the more specific transition above about where multiState goes
+        this.machine.state(InnerEnum.STAR).to(MultiStateEnum.C).transitionAlways();
+        // But this one touches a field nobody else does
+        this.machine.state(InnerEnum.STAR).to(InnerEnum.CIRCLE).transitionAlways();
+
+        this.machine.poll();
+
+        assertEquals(MultiStateEnum.B, this.machine.currentState().multiState());
+        assertEquals(BasicEnum.START, this.machine.currentState().basic());
+        assertEquals(InnerEnum.CIRCLE, this.machine.currentState().inner());
+    }
+
+    @Test
+    void revisitedStatesPickUpNewTransitions() {
+        AtomicBoolean toB = new AtomicBoolean(true);
+        AtomicBoolean toA = new AtomicBoolean(false);
+
+        this.machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(toB::get);
+        this.machine.state(MultiStateEnum.B).to(MultiStateEnum.A).transitionWhen(toA::get);
+
+        // Cycle through both states so each of them has been visited once
+        this.machine.poll();
+        assertEquals(MultiStateEnum.B, this.machine.currentState().multiState());
+
+        toB.set(false);
+        toA.set(true);
+        this.machine.poll();
+        assertEquals(MultiStateEnum.A, this.machine.currentState().multiState());
+
+        // Register something new for a state we already visited, then go back to it
+        this.machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionAlways();
+        toA.set(false);
+        toB.set(true);
+
+        this.machine.poll();
+        assertEquals(MultiStateEnum.B, this.machine.currentState().multiState());
+
+        this.machine.poll();
+        assertEquals(MultiStateEnum.C, this.machine.currentState().multiState());
+    }
+
+    @Test
+    void everyCommandOnAnEdgeIsScheduled() {
+        AtomicInteger ran = new AtomicInteger();
+        AtomicBoolean toB = new AtomicBoolean(true);
+        AtomicBoolean toA = new AtomicBoolean(false);
+
+        this.machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(toB::get)
+                .run(Commands.runOnce(ran::incrementAndGet).ignoringDisable(true));
+        this.machine.state(BasicEnum.START).to(MultiStateEnum.B)
+                .run(Commands.runOnce(ran::incrementAndGet).ignoringDisable(true));
+        this.machine.state(MultiStateEnum.B).to(MultiStateEnum.A).transitionWhen(toA::get);
+
+        this.machine.poll();
+        CommandScheduler.getInstance().run();
+        assertEquals(2, ran.get());
+
+        // Go back and take the same edge again, now with a command registered after it was first taken
+        toB.set(false);
+        toA.set(true);
+        this.machine.poll();
+
+        this.machine.state(MultiStateEnum.A, BasicEnum.START).to(MultiStateEnum.B)
+                .run(Commands.runOnce(ran::incrementAndGet).ignoringDisable(true));
+        toB.set(true);
+        toA.set(false);
+        this.machine.poll();
+        CommandScheduler.getInstance().run();
+
+        assertEquals(5, ran.get());
+    }
+
+    @Test
+    void registrationsMatchEqualSubStatesBuiltSeparately() {
+        AtomicInteger ran = new AtomicInteger();
+
+        // Enable the inner field, so the current state's sub-data already holds its own InnerEnum.STAR value
+        this.machine.state(InnerEnum.SQUARE).to(InnerEnum.CIRCLE).transitionAlways();
+        this.machine.poll();
+
+        // Every call builds a new InnerEnum.STAR value, which has to find what was registered with the others
+        this.machine.state(InnerEnum.STAR).to(InnerEnum.CIRCLE).transitionOn("move");
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> this.machine.state(InnerEnum.STAR).to(InnerEnum.SQUARE).transitionOn("move")
+        );
+        this.machine.state(InnerEnum.STAR).to(InnerEnum.CIRCLE)
+                .run(Commands.runOnce(ran::incrementAndGet).ignoringDisable(true));
+
+        this.machine.fire("move");
+        CommandScheduler.getInstance().run();
+
+        assertEquals(InnerEnum.CIRCLE, this.machine.currentState().inner());
+        assertEquals(1, ran.get());
+    }
+
     /**
      * This test was added because we realized the "state" or "to" methods were not created for this particular
      * permutation of our record components.
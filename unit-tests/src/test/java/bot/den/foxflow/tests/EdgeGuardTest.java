@@ -0,0 +1,148 @@
+package bot.den.foxflow.tests;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EdgeGuardTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void risingEdgesOnlyFireOnce() {
+        var button = new AtomicBoolean();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOnRise(button::get);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.START).transitionOnRise(button::get);
+
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        button.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        // Holding the button doesn't count as another press
+        machine.poll();
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        button.set(false);
+        machine.poll();
+        button.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+    }
+
+    @Test
+    void fallingEdgesFireWhenTheSupplierTurnsFalse() {
+        var button = new AtomicBoolean(true);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOnFall(button::get);
+
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        button.set(false);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void edgesWhileTheStateIsInactiveAreNotSeenLater() {
+        var button = new AtomicBoolean();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> true);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOnRise(button::get);
+
+        // The button is pressed while the machine is still in START
+        button.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        button.set(false);
+        machine.poll();
+        button.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+    }
+
+    @Test
+    void recordMachinesSupportEdgeGuards() {
+        var button = new AtomicBoolean();
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOnRise(button::get);
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionOnFall(button::get);
+
+        machine.poll();
+        button.set(true);
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+
+        button.set(false);
+        machine.poll();
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+    }
+
+    @Test
+    void suppliersAreFirstReadOnThePollAfterRegistering() {
+        var reads = new AtomicInteger();
+        var button = new AtomicBoolean(true);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOnRise(() -> {
+            reads.incrementAndGet();
+            return button.get();
+        });
+        assertEquals(0, reads.get());
+
+        // Already true on the first poll, which isn't a press
+        machine.poll();
+        assertEquals(1, reads.get());
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        button.set(false);
+        machine.poll();
+        button.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void manyEdgeGuardsCanBeRegistered() {
+        var buttons = new AtomicBoolean[100];
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        for (int i = 0; i < buttons.length; i++) {
+            var button = new AtomicBoolean();
+            buttons[i] = button;
+            machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOnRise(button::get);
+        }
+
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        buttons[90].set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+}
@@ -0,0 +1,141 @@
+package bot.den.foxflow.tests;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventDispatchTest {
+    enum Event {
+        BUTTON_PRESSED,
+        GAME_PIECE_SEEN,
+        COMMAND_FINISHED
+    }
+
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void eventsTransitionWithoutPolling() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn(Event.BUTTON_PRESSED);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOn(Event.BUTTON_PRESSED);
+
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+    }
+
+    @Test
+    void eventsWithoutATransitionFromTheCurrentStateAreIgnored() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOn(Event.GAME_PIECE_SEEN);
+
+        assertFalse(machine.fire(Event.GAME_PIECE_SEEN));
+        assertFalse(machine.fire(Event.COMMAND_FINISHED));
+        assertEquals(BasicEnum.START, machine.currentState());
+    }
+
+    @Test
+    void eventsRunTransitionCommands() {
+        var ran = new AtomicBoolean();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine
+                .state(BasicEnum.START)
+                .to(BasicEnum.STATE_A)
+                .transitionOn("go")
+                .run(Commands.runOnce(() -> ran.set(true)).ignoringDisable(true));
+
+        assertTrue(machine.fire("go"));
+        CommandScheduler.getInstance().run();
+
+        assertTrue(ran.get());
+    }
+
+    @Test
+    void conflictingEventTransitionsAreRejected() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOn(Event.BUTTON_PRESSED);
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionOn(Event.BUTTON_PRESSED)
+        );
+    }
+
+    @Test
+    void recordEventsOnlyChangeTheirFields() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn(Event.BUTTON_PRESSED);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn(Event.BUTTON_PRESSED);
+
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertEquals(
+                new BasicRecord(MultiStateEnum.B, BasicEnum.STATE_A, BasicRecord.InnerEnum.STAR),
+                machine.currentState()
+        );
+
+        assertFalse(machine.fire(Event.BUTTON_PRESSED));
+    }
+
+    @Test
+    void recordEventsPreferTheMostSpecificTransition() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn(Event.COMMAND_FINISHED);
+        machine.state(MultiStateEnum.A, BasicEnum.START).to(MultiStateEnum.C).transitionOn(Event.COMMAND_FINISHED);
+
+        assertTrue(machine.fire(Event.COMMAND_FINISHED));
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+    }
+
+    @Test
+    void conflictingRecordEventTransitionsAreRejected() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn(Event.BUTTON_PRESSED);
+
+        // Registering the same transition again is fine
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn(Event.BUTTON_PRESSED);
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> machine.state(MultiStateEnum.A).to(MultiStateEnum.C).transitionOn(Event.BUTTON_PRESSED)
+        );
+
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+
+    @Test
+    void recordEventsFromStatesEnteredLaterStillFire() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn(Event.BUTTON_PRESSED);
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionOn(Event.COMMAND_FINISHED);
+        machine.state(MultiStateEnum.C).to(MultiStateEnum.A).transitionOn(Event.BUTTON_PRESSED);
+
+        assertFalse(machine.fire(Event.COMMAND_FINISHED));
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertFalse(machine.fire(Event.BUTTON_PRESSED));
+        assertTrue(machine.fire(Event.COMMAND_FINISHED));
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertEquals(MultiStateEnum.A, machine.currentState().multiState());
+
+        // The cached tables for a state are used again when it's entered a second time
+        assertTrue(machine.fire(Event.BUTTON_PRESSED));
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+}
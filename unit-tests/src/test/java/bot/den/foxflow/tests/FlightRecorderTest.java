@@ -0,0 +1,112 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.FlightRecorder;
+import bot.den.foxflow.StatePublishing;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecorderTest {
+    private Path file;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        assertTrue(HAL.initialize(500, 0));
+
+        file = Files.createTempFile("foxflow", ".flight");
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void readsBackWhatWasRecorded() throws IOException {
+        try (var recorder = FlightRecorder.open(file, 16, () -> 1234)) {
+            int machine = recorder.registerMachine("intake");
+            recorder.registerState(machine, 0, "IDLE");
+            recorder.registerState(machine, 1, "INTAKING");
+
+            recorder.record(machine, 0, 1, 7);
+        }
+
+        var recording = FlightRecorder.read(file);
+        assertEquals(1, recording.entries().size());
+        assertEquals(new FlightRecorder.Entry(1, 1234, 0, 0, 1, 7), recording.entries().get(0));
+        assertEquals("intake", recording.machineName(0));
+        assertEquals("INTAKING", recording.stateName(0, 1));
+        assertNull(recording.stateName(0, 2));
+    }
+
+    @Test
+    void keepsOnlyTheNewestEntriesInOrder() throws IOException {
+        try (var recorder = FlightRecorder.open(file, 4)) {
+            int machine = recorder.registerMachine("machine");
+            for (int i = 0; i < 10; i++) {
+                recorder.record(machine, i, i + 1, -1);
+            }
+        }
+
+        var entries = FlightRecorder.read(file).entries();
+        assertEquals(4, entries.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(7 + i, entries.get(i).sequence());
+            assertEquals(6 + i, entries.get(i).from());
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Files.writeString(file, "definitely not a flight recording, but long enough to have a header");
+
+        assertThrows(IOException.class, () -> FlightRecorder.read(file));
+    }
+
+    @Test
+    void stateMachinesRecordTheirTransitions() throws IOException {
+        try (var recorder = FlightRecorder.open(file, 64)) {
+            var enumMachine = new BasicEnumStateMachine(BasicEnum.START);
+            enumMachine.configurePublishing("enumFlight", StatePublishing.NAME);
+            enumMachine.enableFlightRecorder(recorder);
+
+            var recordMachine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+            recordMachine.configurePublishing("recordFlight", StatePublishing.NAME);
+            recordMachine.enableFlightRecorder(recorder);
+
+            enumMachine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+            recordMachine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+
+            enumMachine.poll();
+            recordMachine.poll();
+        }
+
+        var recording = FlightRecorder.read(file);
+        var entries = recording.entries();
+        assertEquals(2, entries.size());
+
+        var enumEntry = entries.get(0);
+        assertEquals("enumFlight", recording.machineName(enumEntry.machine()));
+        assertEquals("START", recording.stateName(enumEntry.machine(), enumEntry.from()));
+        assertEquals("STATE_A", recording.stateName(enumEntry.machine(), enumEntry.to()));
+        assertEquals(0, enumEntry.guard());
+
+        var recordEntry = entries.get(1);
+        assertEquals("recordFlight", recording.machineName(recordEntry.machine()));
+        assertEquals(
+                new BasicRecord(MultiStateEnum.B, BasicEnum.START, BasicRecord.InnerEnum.STAR).toString(),
+                recording.stateName(recordEntry.machine(), recordEntry.to())
+        );
+    }
+}
@@ -0,0 +1,220 @@
+package bot.den.foxflow.tests;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GuardDebounceTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+        SimHooks.pauseTiming();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        SimHooks.resumeTiming();
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void debouncedGuardsNeedToStayTrue() {
+        var sensor = new AtomicBoolean(true);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine
+                .state(BasicEnum.START)
+                .to(BasicEnum.STATE_A)
+                .transitionWhen(sensor::get)
+                .debounce(Duration.ofMillis(100));
+
+        machine.poll();
+        SimHooks.stepTiming(0.06);
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        // A flicker starts the count over
+        sensor.set(false);
+        machine.poll();
+        sensor.set(true);
+        machine.poll();
+
+        SimHooks.stepTiming(0.06);
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        SimHooks.stepTiming(0.06);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void debounceOnlyAppliesToItsOwnGuard() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine
+                .state(BasicEnum.START)
+                .to(BasicEnum.STATE_A)
+                .transitionWhen(() -> false)
+                .debounce(Duration.ofSeconds(1))
+                .transitionWhen(() -> true);
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void minimumDwellKeepsTheMachineInAState() {
+        var flapping = new AtomicBoolean(true);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(flapping::get);
+        machine
+                .state(BasicEnum.STATE_A)
+                .to(BasicEnum.START)
+                .transitionWhen(() -> !flapping.get())
+                .minimumDwell(Duration.ofMillis(500));
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        flapping.set(false);
+        SimHooks.stepTiming(0.2);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        SimHooks.stepTiming(0.4);
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+    }
+
+    @Test
+    void recordGuardsCanBeDebounced() {
+        var sensor = new AtomicBoolean(true);
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine
+                .state(MultiStateEnum.A)
+                .to(MultiStateEnum.B)
+                .transitionWhen(sensor::get)
+                .debounce(Duration.ofMillis(100));
+
+        machine.poll();
+        assertEquals(MultiStateEnum.A, machine.currentState().multiState());
+
+        SimHooks.stepTiming(0.1);
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+
+    @Test
+    void recordDebounceCarriesOnWhenAnotherFieldChanges() {
+        var sensor = new AtomicBoolean(true);
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine
+                .state(MultiStateEnum.A)
+                .to(MultiStateEnum.B)
+                .transitionWhen(sensor::get)
+                .debounce(Duration.ofMillis(100));
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("other");
+
+        machine.poll();
+        SimHooks.stepTiming(0.06);
+        machine.fire("other");
+        assertEquals(new BasicRecord(MultiStateEnum.A, BasicEnum.STATE_A, BasicRecord.InnerEnum.STAR), machine.currentState());
+
+        // MultiStateEnum.A was never left, so the sensor has been true for long enough
+        SimHooks.stepTiming(0.04);
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+
+    @Test
+    void recordDwellIsMeasuredFromTheGuardsOwnState() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine
+                .state(MultiStateEnum.A)
+                .to(MultiStateEnum.B)
+                .transitionWhen(() -> true)
+                .minimumDwell(Duration.ofMillis(100));
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("other");
+
+        machine.poll();
+        SimHooks.stepTiming(0.06);
+        machine.fire("other");
+
+        SimHooks.stepTiming(0.04);
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+
+    @Test
+    void filtersNeedAGuardToApplyTo() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        var to = machine.state(BasicEnum.START).to(BasicEnum.STATE_A);
+
+        assertThrows(IllegalStateException.class, () -> to.debounce(Duration.ofMillis(100)));
+        assertThrows(IllegalStateException.class, () -> to.transitionOn("event").minimumDwell(Duration.ofMillis(100)));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> to.transitionWhen(() -> true).debounce(Duration.ofMillis(-1))
+        );
+    }
+
+    @Test
+    void recordRegistrationsSharingASupplierAreFilteredSeparately() {
+        var sensor = new AtomicBoolean(true);
+        BooleanSupplier shared = sensor::get;
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(shared).debounce(Duration.ofMillis(100));
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionWhen(shared);
+
+        machine.poll();
+        assertEquals(MultiStateEnum.A, machine.currentState().multiState());
+
+        SimHooks.stepTiming(0.1);
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+
+        // Only the first registration was debounced
+        machine.poll();
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+    }
+
+    @Test
+    void guardsSkippedByHigherPrioritiesStartTheirDebounceOver() {
+        var sensor = new AtomicBoolean(true);
+        var conflict = new AtomicBoolean();
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.START).transitionWhen(conflict::get).priority(1);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionWhen(conflict::get).priority(1);
+        machine
+                .state(BasicEnum.STATE_A)
+                .to(BasicEnum.STATE_C)
+                .transitionWhen(sensor::get)
+                .debounce(Duration.ofMillis(100));
+
+        machine.poll();
+
+        // The higher priority guards conflict, so the debounced guard isn't looked at
+        SimHooks.stepTiming(0.05);
+        conflict.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        conflict.set(false);
+        SimHooks.stepTiming(0.05);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        SimHooks.stepTiming(0.1);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_C, machine.currentState());
+    }
+}
@@ -0,0 +1,147 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.GuardRate;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GuardRateTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void guardIsOnlyEvaluatedEveryFewTicks() {
+        var evaluations = new AtomicInteger();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return false;
+        }, GuardRate.everyTicks(5));
+
+        for (int i = 0; i < 20; i++) {
+            machine.poll();
+        }
+
+        // Once straight away, then on one tick out of five
+        assertTrue(evaluations.get() >= 4 && evaluations.get() <= 5, "Evaluated " + evaluations.get() + " times");
+    }
+
+    @Test
+    void lastResultIsKeptBetweenEvaluations() {
+        var value = new AtomicBoolean(false);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(value::get, GuardRate.every(Duration.ofHours(1)));
+
+        machine.poll();
+        value.set(true);
+
+        // The guard already answered and isn't due for an hour
+        for (int i = 0; i < 10; i++) {
+            machine.poll();
+        }
+        assertEquals(BasicEnum.START, machine.currentState());
+    }
+
+    @Test
+    void enteringAStateEvaluatesStraightAway() {
+        var value = new AtomicBoolean(false);
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionWhen(value::get, GuardRate.every(Duration.ofHours(1)));
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        value.set(true);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+    }
+
+    @Test
+    void guardsWithTheSameRateAreSpreadOut() {
+        var evaluations = new int[4];
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        for (int i = 0; i < evaluations.length; i++) {
+            int guard = i;
+            machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> {
+                evaluations[guard]++;
+                return false;
+            }, GuardRate.everyTicks(4));
+        }
+
+        // Skip the first poll, which evaluates everything
+        machine.poll();
+        var evaluationsPerPoll = new int[4];
+        for (int i = 0; i < 4; i++) {
+            int before = sum(evaluations);
+            machine.poll();
+            evaluationsPerPoll[i] = sum(evaluations) - before;
+        }
+
+        assertArrayEquals(new int[]{1, 1, 1, 1}, evaluationsPerPoll);
+    }
+
+    @Test
+    void recordGuardsCanBeRateLimited() {
+        var evaluations = new AtomicInteger();
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return false;
+        }, GuardRate.everyTicks(10));
+
+        for (int i = 0; i < 10; i++) {
+            machine.poll();
+        }
+
+        assertTrue(evaluations.get() <= 2, "Evaluated " + evaluations.get() + " times");
+    }
+
+    @Test
+    void recordSchedulesCarryOnWhenAnotherFieldChanges() {
+        var evaluations = new AtomicInteger();
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return false;
+        }, GuardRate.every(Duration.ofHours(1)));
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("other");
+
+        machine.poll();
+        machine.fire("other");
+        machine.poll();
+
+        // MultiStateEnum.A was never left, so the guard isn't due again
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void ratesMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> GuardRate.everyTicks(0));
+        assertThrows(IllegalArgumentException.class, () -> GuardRate.every(Duration.ZERO));
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
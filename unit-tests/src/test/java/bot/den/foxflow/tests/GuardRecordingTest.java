@@ -0,0 +1,200 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.GuardRecording;
+import bot.den.foxflow.RobotState;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GuardRecordingTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setTest(false);
+        DriverStationSim.notifyNewData();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    private static void registerTransitions(BasicEnumStateMachine machine, BooleanSupplier leave, BooleanSupplier finish) {
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(leave);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionWhen(leave);
+        machine.state(BasicEnum.STATE_B).to(BasicEnum.STATE_D).transitionWhen(finish);
+        machine.state(BasicEnum.STATE_D).to(BasicEnum.END).transitionWhen(finish);
+    }
+
+    @Test
+    void replayMakesTheSameDecisions() throws IOException {
+        var tick = new AtomicInteger();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        registerTransitions(machine, () -> tick.get() % 3 == 0, () -> tick.get() % 5 == 0);
+
+        var recording = new GuardRecording();
+        machine.recordGuards(recording);
+        var recordedMetrics = machine.enableMetrics();
+
+        for (; tick.get() < 20; tick.incrementAndGet()) {
+            machine.poll();
+        }
+        assertEquals(20, recording.ticks());
+        assertEquals(BasicEnum.END, machine.currentState());
+
+        var bytes = new ByteArrayOutputStream();
+        recording.write(bytes);
+        var loaded = GuardRecording.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(20, loaded.ticks());
+
+        // The guards are never asked while replaying
+        BooleanSupplier unused = () -> {
+            throw new AssertionError("Guards should not be evaluated during a replay");
+        };
+        var replayed = new BasicEnumStateMachine(BasicEnum.START);
+        registerTransitions(replayed, unused, unused);
+        var replayedMetrics = replayed.enableMetrics();
+        replayed.replay(loaded);
+
+        assertEquals(BasicEnum.END, replayed.currentState());
+        assertEquals(recordedMetrics.snapshot().polls(), replayedMetrics.snapshot().polls());
+        for (var from : BasicEnum.values()) {
+            for (var to : BasicEnum.values()) {
+                assertEquals(recordedMetrics.transitionCount(from, to), replayedMetrics.transitionCount(from, to));
+            }
+        }
+    }
+
+    @Test
+    void replayDoesNotScheduleCommands() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+
+        var recording = new GuardRecording();
+        machine.recordGuards(recording);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        var ran = new AtomicBoolean();
+        var replayed = new BasicEnumStateMachine(BasicEnum.START);
+        replayed.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways().run(Commands.runOnce(() -> ran.set(true)));
+        replayed.replay(recording);
+        CommandScheduler.getInstance().run();
+
+        assertEquals(BasicEnum.STATE_A, replayed.currentState());
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void replayUsesTheRecordedRobotMode() {
+        var machine = new RobotRecordStateMachine(MultiStateEnum.A);
+
+        var recording = new GuardRecording();
+        machine.recordGuards(recording);
+        machine.poll();
+
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.notifyNewData();
+        machine.poll();
+        assertEquals(RobotState.AUTO, machine.currentState().robotState());
+
+        // The driver station is back to disabled, but the replay still sees autonomous
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+
+        var replayed = new RobotRecordStateMachine(MultiStateEnum.A);
+        replayed.replay(recording);
+        assertEquals(RobotState.AUTO, replayed.currentState().robotState());
+    }
+
+    @Test
+    void replayFiresRecordedEvents() throws IOException {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("go");
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOn("next");
+        machine.state(BasicEnum.STATE_B).to(BasicEnum.STATE_D).transitionAlways();
+        machine.state(BasicEnum.STATE_D).to(BasicEnum.END).transitionOn("go");
+
+        var recording = new GuardRecording();
+        machine.recordGuards(recording);
+        machine.poll();
+        machine.fire("go");
+        machine.poll();
+        machine.fireOnNextPoll("next");
+        machine.poll();
+        machine.poll();
+        assertEquals(BasicEnum.STATE_D, machine.currentState());
+
+        // Fired after the last poll
+        machine.fire("go");
+        assertEquals(BasicEnum.END, machine.currentState());
+
+        var bytes = new ByteArrayOutputStream();
+        recording.write(bytes);
+        var loaded = GuardRecording.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        var replayed = new BasicEnumStateMachine(BasicEnum.START);
+        replayed.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("go");
+        replayed.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOn("next");
+        replayed.state(BasicEnum.STATE_B).to(BasicEnum.STATE_D).transitionAlways();
+        replayed.state(BasicEnum.STATE_D).to(BasicEnum.END).transitionOn("go");
+        var metrics = replayed.enableMetrics();
+        replayed.replay(loaded);
+
+        assertEquals(BasicEnum.END, replayed.currentState());
+        assertEquals(1, metrics.transitionCount(BasicEnum.START, BasicEnum.STATE_A));
+        assertEquals(1, metrics.transitionCount(BasicEnum.STATE_A, BasicEnum.STATE_B));
+    }
+
+    @Test
+    void eventsFiredByCallbacksAreNotReplayedTwice() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn("go");
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionOn("go");
+        machine.state(MultiStateEnum.B).onEnter(() -> machine.fire("go"));
+
+        var recording = new GuardRecording();
+        machine.recordGuards(recording);
+        machine.poll();
+        machine.fire("go");
+        machine.poll();
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+
+        var replayed = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        replayed.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn("go");
+        replayed.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionOn("go");
+        replayed.state(MultiStateEnum.B).onEnter(() -> replayed.fire("go"));
+        var metrics = replayed.enableMetrics();
+        replayed.replay(recording);
+
+        assertEquals(MultiStateEnum.C, replayed.currentState().multiState());
+        assertEquals(2, metrics.snapshot().transitions());
+    }
+
+    @Test
+    void rejectsOtherStreams() {
+        var bytes = new ByteArrayInputStream("not a guard recording".getBytes());
+
+        assertThrows(IOException.class, () -> GuardRecording.read(bytes));
+    }
+}
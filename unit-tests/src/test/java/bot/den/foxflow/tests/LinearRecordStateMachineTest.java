@@ -0,0 +1,127 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.RobotState;
+import bot.den.foxflow.exceptions.InvalidStateTransition;
+import bot.den.foxflow.tests.LinearRecord.Mode;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinearRecordStateMachineTest {
+    private LinearRecordStateMachine machine;
+
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+
+        this.machine = new LinearRecordStateMachine(
+                MultiStateEnum.A,
+                BasicEnum.START,
+                Mode.IDLE
+        );
+    }
+
+    @AfterEach
+    public void cleanup() {
+        // This method runs after each test to reset the scheduler state
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run(); // Call run() to execute end() methods
+    }
+
+    @Test
+    void onlySingleFieldsAndTheFullRecordGetOverloads() {
+        long stateMethods = Arrays
+                .stream(LinearRecordStateMachine.class.getMethods())
+                .filter(m -> m.getName().equals("state"))
+                .count();
+
+        // One per field, the full set of fields, the user record and the data class
+        assertEquals(7, stateMethods);
+    }
+
+    @Test
+    void canTransitionGivenSingleField() {
+        this.machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+
+        this.machine.poll();
+
+        assertEquals(MultiStateEnum.A, this.machine.currentState().multiState());
+        assertEquals(BasicEnum.STATE_A, this.machine.currentState().basic());
+        assertEquals(Mode.IDLE, this.machine.currentState().mode());
+    }
+
+    @Test
+    void canTransitionGivenCombinedFields() {
+        var from = LinearRecordData.of(MultiStateEnum.A).with(Mode.IDLE);
+        var to = LinearRecordData.of(MultiStateEnum.B).with(Mode.ACTIVE);
+
+        this.machine.state(from).to(to).transitionAlways();
+
+        this.machine.poll();
+
+        assertEquals(MultiStateEnum.B, this.machine.currentState().multiState());
+        assertEquals(BasicEnum.START, this.machine.currentState().basic());
+        assertEquals(Mode.ACTIVE, this.machine.currentState().mode());
+    }
+
+    @Test
+    void combinedFieldsWinOverSingleFields() {
+        AtomicBoolean test = new AtomicBoolean(true);
+
+        this.machine.state(LinearRecordData.of(MultiStateEnum.A).with(BasicEnum.START)).to(MultiStateEnum.B).transitionAlways();
+        this.machine.state(MultiStateEnum.A).to(MultiStateEnum.C).transitionWhen(test::get);
+
+        this.machine.poll();
+
+        assertEquals(MultiStateEnum.B, this.machine.currentState().multiState());
+    }
+
+    @Test
+    void independentSingleFieldTransitionsMerge() {
+        this.machine.state(MultiStateEnum.A).to(MultiStateEnum.C).transitionAlways();
+        this.machine.state(Mode.IDLE).to(Mode.ACTIVE).transitionAlways();
+
+        this.machine.poll();
+
+        assertEquals(MultiStateEnum.C, this.machine.currentState().multiState());
+        assertEquals(BasicEnum.START, this.machine.currentState().basic());
+        assertEquals(Mode.ACTIVE, this.machine.currentState().mode());
+    }
+
+    @Test
+    void combinedFieldsRespectTransitionLimits() {
+        var from = LinearRecordData.of(BasicEnum.START).with(Mode.IDLE);
+        var to = LinearRecordData.of(BasicEnum.STATE_B).with(Mode.ACTIVE);
+
+        assertThrows(InvalidStateTransition.class, () -> this.machine.state(from).to(to));
+    }
+
+    @Test
+    void cannotTransitionToRobotStateThroughData() {
+        var to = LinearRecordData.of(MultiStateEnum.B).with(RobotState.AUTO);
+
+        assertThrows(IllegalArgumentException.class, () -> this.machine.state(MultiStateEnum.A).to(to));
+        assertThrows(IllegalArgumentException.class, () -> this.machine.transitionTo(to));
+    }
+
+    @Test
+    void combinedDataEqualsTheDedicatedClass() {
+        // A combination that happens to match a dedicated class should become that class
+        assertEquals(
+                new LinearRecordData.S_0(MultiStateEnum.A),
+                LinearRecordData.of(MultiStateEnum.A)
+        );
+
+        assertEquals(
+                LinearRecordData.of(MultiStateEnum.A).with(Mode.IDLE),
+                LinearRecordData.of(Mode.IDLE).with(MultiStateEnum.A)
+        );
+    }
+}
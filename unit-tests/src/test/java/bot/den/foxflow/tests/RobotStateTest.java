@@ -1,11 +1,14 @@
 package bot.den.foxflow.tests;
 
 import bot.den.foxflow.RobotState;
+import bot.den.foxflow.StatePublishing;
 import edu.wpi.first.hal.HAL;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.simulation.DriverStationSim;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -83,6 +86,27 @@ public class RobotStateTest {
         assertEquals(MultiStateEnum.B, machine.currentState().multiState());
     }
 
+    @Test
+    void autoStateKeepsItsRobotStateWhenPublished() {
+        var machine = new RobotRecordStateMachine(MultiStateEnum.A);
+        machine.configurePublishing("robotStateAuto", StatePublishing.NAME);
+
+        // Only matches if the sub states of the current state keep AUTO instead of being built as DISABLED
+        machine.state(RobotState.AUTO).to(MultiStateEnum.B).transitionAlways();
+
+        setDriverStationState(RobotState.AUTO);
+        machine.poll();
+        assertEquals(new RobotRecord(MultiStateEnum.A, RobotState.AUTO), machine.currentState());
+
+        machine.poll();
+        assertEquals(new RobotRecord(MultiStateEnum.B, RobotState.AUTO), machine.currentState());
+
+        var topic = NetworkTableInstance.getDefault().getStringTopic("StateMachine/robotStateAuto/currentState");
+        try (var subscriber = topic.subscribe("")) {
+            assertEquals(new RobotRecord(MultiStateEnum.B, RobotState.AUTO).toString(), subscriber.get());
+        }
+    }
+
     /**
      * This is a self-contained method that handles updating the Driver Station and ensuring the data is propagated in
      * a way that our code and the test can see it.
@@ -0,0 +1,139 @@
+package bot.den.foxflow.tests;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateCallbacksTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void enumCallbacksRunOnEnterAndExit() {
+        List<String> calls = new ArrayList<>();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways();
+
+        machine
+                .state(BasicEnum.STATE_A)
+                .onEnter(() -> calls.add("enter A"))
+                .onExit(() -> calls.add("exit A"));
+        machine.state(BasicEnum.START).onExit(() -> calls.add("exit START"));
+
+        machine.poll();
+        assertEquals(List.of("exit START", "enter A"), calls);
+
+        machine.poll();
+        assertEquals(List.of("exit START", "enter A", "exit A"), calls);
+    }
+
+    @Test
+    void recordCallbacksRunWhenAPartialStateStartsOrStopsMatching() {
+        List<String> calls = new ArrayList<>();
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+        machine.state(MultiStateEnum.B).to(BasicEnum.STATE_A).transitionAlways();
+
+        machine
+                .state(BasicEnum.START)
+                .onEnter(() -> calls.add("enter START"))
+                .onExit(() -> calls.add("exit START"));
+        machine.state(MultiStateEnum.B, BasicEnum.STATE_A).onEnter(() -> calls.add("enter B, STATE_A"));
+
+        // Still in START, so nothing is entered or left
+        machine.poll();
+        assertEquals(List.of(), calls);
+
+        machine.poll();
+        assertEquals(List.of("exit START", "enter B, STATE_A"), calls);
+    }
+
+    @Test
+    void recordTriggersFollowStateChanges() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+
+        var alreadyActive = machine.state(BasicEnum.START).trigger();
+        var notYetActive = machine.state(MultiStateEnum.B).trigger();
+
+        assertTrue(alreadyActive.getAsBoolean());
+        assertFalse(notYetActive.getAsBoolean());
+
+        machine.poll();
+
+        assertTrue(alreadyActive.getAsBoolean());
+        assertTrue(notYetActive.getAsBoolean());
+    }
+
+    @Test
+    void enumCallbacksCanTransitionTheStateMachine() {
+        List<String> calls = new ArrayList<>();
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionOn("skip");
+
+        machine.state(BasicEnum.START).onExit(() -> calls.add("exit START"));
+        machine
+                .state(BasicEnum.STATE_A)
+                .onEnter(() -> {
+                    calls.add("enter A");
+                    machine.fire("skip");
+                })
+                .onEnter(() -> calls.add("enter A again"))
+                .onExit(() -> calls.add("exit A"));
+        machine.state(BasicEnum.STATE_B).onEnter(() -> calls.add("enter B"));
+
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+        assertEquals(List.of("exit START", "enter A", "exit A", "enter B"), calls);
+    }
+
+    @Test
+    void recordCallbacksCanTransitionTheStateMachine() {
+        List<String> calls = new ArrayList<>();
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionOn("go");
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionOn("skip");
+
+        machine.state(MultiStateEnum.A).onExit(() -> calls.add("exit A"));
+        machine
+                .state(MultiStateEnum.B)
+                .onEnter(() -> {
+                    calls.add("enter B");
+                    machine.fire("skip");
+                })
+                .onExit(() -> calls.add("exit B"));
+        // Entered by the same transition, but left again before its callbacks get a turn
+        machine
+                .state(MultiStateEnum.B, BasicEnum.START)
+                .onEnter(() -> calls.add("enter B, START"))
+                .onExit(() -> calls.add("exit B, START"));
+        machine.state(MultiStateEnum.C).onEnter(() -> calls.add("enter C"));
+
+        assertTrue(machine.fire("go"));
+
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+        assertEquals(List.of("exit A", "enter B", "exit B", "enter C"), calls);
+
+        // The triggers agree with where the state machine ended up
+        assertFalse(machine.state(MultiStateEnum.B).trigger().getAsBoolean());
+        assertTrue(machine.state(MultiStateEnum.C).trigger().getAsBoolean());
+    }
+}
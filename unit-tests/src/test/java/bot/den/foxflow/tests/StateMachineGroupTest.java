@@ -0,0 +1,169 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.DriverStationMode;
+import bot.den.foxflow.PollableStateMachine;
+import bot.den.foxflow.RobotState;
+import bot.den.foxflow.StateMachineGroup;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateMachineGroupTest {
+    /**
+     * Counts how often the driver station is read, and remembers the modes it was polled with
+     */
+    private static class CountingMachine implements PollableStateMachine<String> {
+        private final boolean readsDriverStation;
+        private int reads;
+        private final List<Integer> polledWith = new ArrayList<>();
+
+        private CountingMachine(boolean readsDriverStation) {
+            this.readsDriverStation = readsDriverStation;
+        }
+
+        @Override
+        public String currentState() {
+            return "state";
+        }
+
+        @Override
+        public void poll() {
+            poll(readDriverStation());
+        }
+
+        @Override
+        public void poll(int driverStationMode) {
+            polledWith.add(driverStationMode);
+        }
+
+        @Override
+        public boolean readsDriverStation() {
+            return readsDriverStation;
+        }
+
+        @Override
+        public int readDriverStation() {
+            reads++;
+            return DriverStationMode.TELEOP_ENABLED;
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setTest(false);
+        DriverStationSim.notifyNewData();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void driverStationIsReadOncePerPass() {
+        var first = new CountingMachine(false);
+        var second = new CountingMachine(true);
+        var third = new CountingMachine(true);
+        var group = new StateMachineGroup(first, second, third);
+
+        group.poll();
+        group.poll();
+
+        assertEquals(0, first.reads);
+        assertEquals(2, second.reads);
+        assertEquals(0, third.reads);
+        assertEquals(List.of(DriverStationMode.TELEOP_ENABLED, DriverStationMode.TELEOP_ENABLED), third.polledWith);
+    }
+
+    @Test
+    void generatedStateMachinesArePolledTogether() {
+        var enumMachine = new BasicEnumStateMachine(BasicEnum.START);
+        enumMachine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+
+        var robotMachine = new RobotRecordStateMachine(MultiStateEnum.A);
+        robotMachine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+
+        var group = new StateMachineGroup()
+                .add(enumMachine)
+                .add(robotMachine);
+        assertEquals(2, group.size());
+
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.notifyNewData();
+
+        group.poll();
+
+        assertEquals(BasicEnum.STATE_A, enumMachine.currentState());
+        assertEquals(MultiStateEnum.B, robotMachine.currentState().multiState());
+        assertEquals(RobotState.AUTO, robotMachine.currentState().robotState());
+    }
+
+    @Test
+    void passesAreTimed() {
+        var group = new StateMachineGroup(new CountingMachine(false));
+        assertEquals(0, group.averagePollNanos());
+
+        group.poll();
+        group.poll();
+
+        assertEquals(2, group.polls());
+        assertTrue(group.maxPollNanos() >= group.lastPollNanos());
+        assertTrue(group.averagePollNanos() <= group.maxPollNanos());
+
+        group.resetTiming();
+        assertEquals(0, group.polls());
+    }
+
+    @Test
+    void dependenciesArePolledFirst() {
+        var intake = new BasicEnumStateMachine(BasicEnum.START);
+        var shooter = new BasicEnumStateMachine(BasicEnum.START);
+        intake.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        shooter.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> intake.currentState() == BasicEnum.STATE_A);
+
+        // Added in the wrong order, the shooter would only see the intake move on the next pass
+        var group = new StateMachineGroup(shooter, intake).dependsOn(shooter, intake);
+        group.poll();
+
+        assertEquals(BasicEnum.STATE_A, intake.currentState());
+        assertEquals(BasicEnum.STATE_A, shooter.currentState());
+    }
+
+    @Test
+    void cyclesAreRejected() {
+        var first = new CountingMachine(false);
+        var second = new CountingMachine(false);
+        var third = new CountingMachine(false);
+        var group = new StateMachineGroup(first, second, third)
+                .dependsOn(first, second)
+                .dependsOn(second, third);
+
+        assertThrows(IllegalArgumentException.class, () -> group.dependsOn(third, first));
+
+        // The rejected dependency isn't kept, so the group still polls
+        group.poll();
+        assertEquals(1, first.polledWith.size());
+    }
+
+    @Test
+    void machinesMustBeInTheGroup() {
+        var group = new StateMachineGroup(new CountingMachine(false));
+
+        assertThrows(IllegalArgumentException.class, () -> group.dependsOn(new CountingMachine(false), new CountingMachine(false)));
+    }
+}
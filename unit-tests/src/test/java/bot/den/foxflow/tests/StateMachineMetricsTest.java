@@ -0,0 +1,121 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.StateMachineMetrics;
+import bot.den.foxflow.exceptions.InvalidStateTransition;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateMachineMetricsTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void enableMetricsReturnsTheSameInstance() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+
+        assertSame(machine.enableMetrics(), machine.enableMetrics());
+    }
+
+    @Test
+    void enumMachineCountsPollsGuardsAndTransitions() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        var metrics = machine.enableMetrics();
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways().run(Commands.none());
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.START).transitionWhen(() -> false);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways();
+
+        machine.poll();
+        machine.poll();
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+
+        var snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.polls());
+        // One guard leaving START, two leaving STATE_A, none leaving STATE_B
+        assertEquals(3, snapshot.guardEvaluations());
+        assertEquals(2, snapshot.transitions());
+        assertEquals(1, snapshot.commandsScheduled());
+        assertEquals(0, snapshot.failLoudlyTrips());
+        assertTrue(snapshot.pollNanos() > 0);
+        assertTrue(snapshot.maxPollNanos() <= snapshot.pollNanos());
+
+        assertEquals(1, metrics.transitionCount(BasicEnum.START, BasicEnum.STATE_A));
+        assertEquals(1, metrics.transitionCount(BasicEnum.STATE_A, BasicEnum.STATE_B));
+        assertEquals(0, metrics.transitionCount(BasicEnum.STATE_A, BasicEnum.START));
+    }
+
+    @Test
+    void failLoudlyTripsAreCounted() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        var metrics = machine.enableMetrics();
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).failLoudly();
+
+        assertThrows(InvalidStateTransition.class, machine::poll);
+
+        var snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.polls());
+        assertEquals(1, snapshot.failLoudlyTrips());
+        assertEquals(0, snapshot.transitions());
+    }
+
+    @Test
+    void recordMachineCountsEdgesOnFullStates() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        var metrics = machine.enableMetrics();
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(() -> false);
+
+        machine.poll();
+        machine.poll();
+
+        var snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.polls());
+        // Both guards are checked while leaving the first state, only the MultiStateEnum one afterward
+        assertEquals(3, snapshot.guardEvaluations());
+        assertEquals(1, snapshot.transitions());
+
+        assertEquals(1, metrics.transitionCount(
+                new BasicRecord(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR),
+                new BasicRecord(MultiStateEnum.A, BasicEnum.STATE_A, BasicRecord.InnerEnum.STAR)
+        ));
+    }
+
+    @Test
+    void snapshotsCanBeReusedAndReset() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        var metrics = machine.enableMetrics();
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.poll();
+
+        var snapshot = new StateMachineMetrics.Snapshot();
+        assertSame(snapshot, metrics.snapshot(snapshot));
+        assertEquals(1, snapshot.transitions());
+
+        metrics.reset();
+        metrics.snapshot(snapshot);
+
+        assertEquals(0, snapshot.polls());
+        assertEquals(0, snapshot.transitions());
+        assertEquals(0, metrics.transitionCount(BasicEnum.START, BasicEnum.STATE_A));
+    }
+}
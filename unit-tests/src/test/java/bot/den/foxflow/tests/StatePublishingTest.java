@@ -0,0 +1,142 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.StatePublishing;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatePublishingTest {
+    private final NetworkTableInstance networkTables = NetworkTableInstance.getDefault();
+
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    private String currentState(String name) {
+        try (var subscriber = networkTables.getStringTopic("StateMachine/" + name + "/currentState").subscribe("")) {
+            return subscriber.get();
+        }
+    }
+
+    private long currentStateId(String name) {
+        try (var subscriber = networkTables.getIntegerTopic("StateMachine/" + name + "/currentStateId").subscribe(-1)) {
+            return subscriber.get();
+        }
+    }
+
+    /**
+     * Reads every state name published so far, stopping at the first id without one
+     */
+    private List<String> stateNames(String name) {
+        List<String> names = new ArrayList<>();
+        while (true) {
+            var topic = "StateMachine/" + name + "/stateNames/" + names.size();
+            try (var subscriber = networkTables.getStringTopic(topic).subscribe("")) {
+                var stateName = subscriber.get();
+                if (stateName.isEmpty()) {
+                    return names;
+                }
+                names.add(stateName);
+            }
+        }
+    }
+
+    @Test
+    void publishesUnderTheTypeNameByDefault() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        assertTrue(machine.publishingName().startsWith("BasicEnum"));
+        assertEquals("START", currentState(machine.publishingName()));
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.poll();
+
+        assertEquals("STATE_A", currentState(machine.publishingName()));
+    }
+
+    @Test
+    void instancesOfTheSameTypeGetTheirOwnNames() {
+        var first = new BasicEnumStateMachine(BasicEnum.START);
+        var second = new BasicEnumStateMachine(BasicEnum.START);
+        assertNotEquals(first.publishingName(), second.publishingName());
+
+        second.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        first.poll();
+        second.poll();
+
+        assertEquals("START", currentState(first.publishingName()));
+        assertEquals("STATE_A", currentState(second.publishingName()));
+    }
+
+    @Test
+    void namesAreHeldUntilTheMachineMovesAway() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.configurePublishing("held", StatePublishing.NAME);
+
+        // A second claim on the same name is the one that gets warned about
+        assertFalse(StatePublishing.claimName("held"));
+        StatePublishing.releaseName("held");
+
+        var derived = StatePublishing.claimDefaultName("held");
+        assertEquals("held_2", derived);
+        StatePublishing.releaseName(derived);
+
+        machine.configurePublishing("movedAway", StatePublishing.NAME);
+        assertTrue(StatePublishing.claimName("held"));
+        StatePublishing.releaseName("held");
+    }
+
+    @Test
+    void enumIdsAreOrdinals() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.configurePublishing("enumIds", StatePublishing.ID);
+
+        var names = stateNames("enumIds");
+        assertEquals(BasicEnum.values().length, names.size());
+        assertEquals("STATE_A", names.get(BasicEnum.STATE_A.ordinal()));
+        assertEquals(BasicEnum.START.ordinal(), currentStateId("enumIds"));
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_A.ordinal(), currentStateId("enumIds"));
+    }
+
+    @Test
+    void recordIdsAreAssignedAsStatesAreSeen() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.configurePublishing("recordIds", StatePublishing.ID);
+
+        assertEquals(0, currentStateId("recordIds"));
+        assertEquals(1, stateNames("recordIds").size());
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.START).transitionAlways();
+
+        machine.poll();
+        assertEquals(1, currentStateId("recordIds"));
+
+        var names = stateNames("recordIds");
+        assertEquals(2, names.size());
+        assertEquals(machine.currentState().toString(), names.get(1));
+
+        // Coming back to a state we've seen reuses its id
+        machine.poll();
+        assertEquals(0, currentStateId("recordIds"));
+        assertEquals(2, stateNames("recordIds").size());
+    }
+}
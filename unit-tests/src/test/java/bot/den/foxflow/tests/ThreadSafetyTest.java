@@ -0,0 +1,93 @@
+package bot.den.foxflow.tests;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThreadSafetyTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void actionsFromOtherThreadsRunOnThePollingThread() throws InterruptedException {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        var ranOn = new AtomicReference<Thread>();
+
+        var other = new Thread(() -> machine.runOnNextPoll(() -> {
+            ranOn.set(Thread.currentThread());
+            machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        }));
+        other.start();
+        other.join();
+
+        // Nothing happens until the state machine is polled
+        assertNull(ranOn.get());
+        machine.poll();
+
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void eventsFromOtherThreadsAreFiredOnTheNextPoll() throws InterruptedException {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionOn("seen");
+
+        var other = new Thread(() -> machine.fireOnNextPoll("seen"));
+        other.start();
+        other.join();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void otherThreadsSeeTransitions() throws InterruptedException {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.A).transitionAlways();
+
+        var started = new CountDownLatch(1);
+        var stop = new AtomicBoolean();
+        var sawB = new AtomicBoolean();
+        var reader = new Thread(() -> {
+            started.countDown();
+            while (!stop.get()) {
+                var state = machine.currentState();
+                assertNotNull(state);
+                if (state.multiState() == MultiStateEnum.B) {
+                    sawB.set(true);
+                }
+            }
+        });
+        reader.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!sawB.get() && System.nanoTime() < deadline) {
+            machine.poll();
+        }
+
+        stop.set(true);
+        reader.join();
+        assertTrue(sawB.get());
+    }
+}
@@ -0,0 +1,226 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.TimerWheel;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimedTransitionTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+        SimHooks.pauseTiming();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        SimHooks.resumeTiming();
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void timeoutsFireAfterTheirDelay() {
+        var wheel = new TimerWheel(Duration.ofMillis(1));
+        var timeout = wheel.timeout(Duration.ofMillis(100));
+        wheel.advance(0);
+        timeout.arm(0);
+
+        wheel.advance(99_999);
+        assertFalse(timeout.getAsBoolean());
+
+        wheel.advance(100_000);
+        assertTrue(timeout.getAsBoolean());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timeoutsOnEveryLevelFireInOrder() {
+        var wheel = new TimerWheel(Duration.ofMillis(1));
+        wheel.advance(0);
+
+        // From the first level of the wheel all the way past the last one
+        var delays = new long[]{1, 63, 64, 65, 4_095, 4_096, 300_000, 16_777_216, 20_000_000};
+        var timeouts = new ArrayList<TimerWheel.Timeout>();
+        for (var delay : delays) {
+            var timeout = wheel.timeout(Duration.ofMillis(delay));
+            timeout.arm(0);
+            timeouts.add(timeout);
+        }
+
+        for (int i = 0; i < delays.length; i++) {
+            wheel.advance(delays[i] * 1000 - 1);
+            assertFalse(timeouts.get(i).getAsBoolean(), "Timeout of " + delays[i] + "ms fired early");
+
+            wheel.advance(delays[i] * 1000);
+            assertTrue(timeouts.get(i).getAsBoolean(), "Timeout of " + delays[i] + "ms didn't fire");
+        }
+
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTimeoutsNeverFire() {
+        var wheel = new TimerWheel(Duration.ofMillis(1));
+        var cancelled = wheel.timeout(Duration.ofMillis(50));
+        var kept = wheel.timeout(Duration.ofMillis(50));
+        wheel.advance(0);
+        cancelled.arm(0);
+        kept.arm(0);
+
+        cancelled.cancel();
+        wheel.advance(1_000_000);
+
+        assertFalse(cancelled.getAsBoolean());
+        assertTrue(kept.getAsBoolean());
+    }
+
+    @Test
+    void smallStepsBackInTimeAreIgnored() {
+        var wheel = new TimerWheel(Duration.ofMillis(1));
+        var timeout = wheel.timeout(Duration.ofMillis(10));
+        wheel.advance(0);
+        timeout.arm(0);
+
+        // Another thread read the clock before the wheel was moved forward
+        wheel.advance(5_000);
+        wheel.advance(4_000);
+
+        wheel.advance(9_999);
+        assertFalse(timeout.getAsBoolean());
+        wheel.advance(10_000);
+        assertTrue(timeout.getAsBoolean());
+    }
+
+    @Test
+    void machinesPolledFromDifferentThreadsShareTheWheel() throws InterruptedException {
+        SimHooks.resumeTiming();
+
+        int roundTrips = 200;
+        var trips = new AtomicIntegerArray(2);
+        var failures = new ConcurrentLinkedQueue<Throwable>();
+        var threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    var machines = new ArrayList<BasicEnumStateMachine>();
+                    for (int i = 0; i < 50; i++) {
+                        var machine = new BasicEnumStateMachine(BasicEnum.START);
+                        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAfter(Duration.ofMillis(1));
+                        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAfter(Duration.ofHours(1));
+                        machine.state(BasicEnum.STATE_A).to(BasicEnum.START).transitionAlways();
+                        machines.add(machine);
+                    }
+
+                    // Every machine keeps arming, expiring and cancelling timeouts while the other thread does the same
+                    var returned = new int[machines.size()];
+                    long deadline = System.nanoTime() + 10_000_000_000L;
+                    while (min(returned) < roundTrips && System.nanoTime() < deadline) {
+                        for (int i = 0; i < machines.size(); i++) {
+                            var before = machines.get(i).currentState();
+                            machines.get(i).poll();
+                            if (before == BasicEnum.STATE_A && machines.get(i).currentState() == BasicEnum.START) {
+                                returned[i]++;
+                            }
+                        }
+                    }
+
+                    trips.set(thread, min(returned));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty(), "Polling failed: " + failures);
+        assertEquals(roundTrips, trips.get(0));
+        assertEquals(roundTrips, trips.get(1));
+    }
+
+    @Test
+    void enumMachinesTransitionAfterADelay() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAfter(Duration.ofMillis(500));
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAfter(Duration.ofSeconds(1));
+
+        SimHooks.stepTiming(0.48);
+        machine.poll();
+        assertEquals(BasicEnum.START, machine.currentState());
+
+        SimHooks.stepTiming(0.04);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        // The second timeout only starts counting once STATE_A is entered
+        SimHooks.stepTiming(0.9);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+        assertEquals(0.9, machine.timeInState(), 1e-6);
+
+        SimHooks.stepTiming(0.2);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+    }
+
+    @Test
+    void timeoutsRestartWhenTheStateIsEnteredAgain() {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAfter(Duration.ofSeconds(1));
+
+        CommandScheduler.getInstance().schedule(machine.transitionTo(BasicEnum.STATE_A));
+        CommandScheduler.getInstance().run();
+
+        SimHooks.stepTiming(0.7);
+        CommandScheduler.getInstance().schedule(machine.transitionTo(BasicEnum.START));
+        CommandScheduler.getInstance().run();
+        CommandScheduler.getInstance().schedule(machine.transitionTo(BasicEnum.STATE_A));
+        CommandScheduler.getInstance().run();
+
+        SimHooks.stepTiming(0.7);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+
+        SimHooks.stepTiming(0.4);
+        machine.poll();
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+    }
+
+    @Test
+    void recordMachinesTransitionAfterADelayInAPartialState() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(BasicRecord.InnerEnum.CIRCLE).transitionAlways();
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAfter(Duration.ofMillis(250));
+
+        // Changing another part of the state doesn't restart the timeout
+        machine.poll();
+        assertEquals(BasicRecord.InnerEnum.CIRCLE, machine.currentState().inner());
+
+        SimHooks.stepTiming(0.3);
+        machine.poll();
+        assertEquals(MultiStateEnum.B, machine.currentState().multiState());
+    }
+
+    private static int min(int[] values) {
+        int min = Integer.MAX_VALUE;
+        for (int value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+}
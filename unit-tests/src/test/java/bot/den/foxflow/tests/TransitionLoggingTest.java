@@ -0,0 +1,209 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.StatePublishing;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import edu.wpi.first.util.datalog.DataLogWriter;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransitionLoggingTest {
+    private Path logFile;
+    private DataLogWriter log;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        assertTrue(HAL.initialize(500, 0));
+
+        logFile = Files.createTempFile("foxflow", ".wpilog");
+        log = new DataLogWriter(logFile.toString());
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+
+        log.close();
+        Files.deleteIfExists(logFile);
+    }
+
+    /**
+     * Reads back every record written to the given entry name
+     */
+    private List<DataLogRecord> records(String name) throws IOException {
+        log.flush();
+
+        Map<Integer, String> entries = new HashMap<>();
+        List<DataLogRecord> records = new ArrayList<>();
+        for (var record : new DataLogReader(logFile.toString())) {
+            if (record.isStart()) {
+                var start = record.getStartData();
+                entries.put(start.entry, start.name);
+            } else if (!record.isControl() && name.equals(entries.get(record.getEntry()))) {
+                records.add(record);
+            }
+        }
+
+        return records;
+    }
+
+    private static ByteBuffer buffer(DataLogRecord record) {
+        return ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    void structRoundTrips() {
+        var struct = BasicEnumStateMachine.Transition.struct;
+        var buffer = ByteBuffer.allocate(struct.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+
+        struct.pack(buffer, new BasicEnumStateMachine.Transition(1, 2, 3, 4));
+        buffer.flip();
+        var transition = struct.unpack(buffer);
+
+        assertEquals(1, transition.from());
+        assertEquals(2, transition.to());
+        assertEquals(3, transition.guard());
+        assertEquals(4, transition.commandsScheduled());
+
+        assertEquals("bot_den_foxflow_tests_BasicEnumTransition", struct.getTypeName());
+        assertTrue(struct.getSchema().startsWith("enum {START=0, STATE_A=1,"));
+    }
+
+    @Test
+    void enumTransitionsAreLoggedWithTheFiringGuard() throws IOException {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.enableTransitionLogging(log);
+
+        // Guard 0 never fires, guard 1 takes us to STATE_A and guard 2 onward to STATE_B
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> false);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways().run(Commands.none());
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways();
+
+        machine.poll();
+        machine.poll();
+
+        var records = records("StateMachine/" + machine.publishingName() + "/transitions");
+        assertEquals(2, records.size());
+
+        var first = BasicEnumStateMachine.Transition.struct.unpack(buffer(records.get(0)));
+        assertEquals(BasicEnum.START.ordinal(), first.from());
+        assertEquals(BasicEnum.STATE_A.ordinal(), first.to());
+        assertEquals(1, first.guard());
+        assertEquals(1, first.commandsScheduled());
+
+        var second = BasicEnumStateMachine.Transition.struct.unpack(buffer(records.get(1)));
+        assertEquals(BasicEnum.STATE_B.ordinal(), second.to());
+        assertEquals(2, second.guard());
+        assertEquals(0, second.commandsScheduled());
+
+        var names = records("StateMachine/" + machine.publishingName() + "/stateNames");
+        assertEquals(BasicEnum.values().length, names.size());
+        assertEquals("STATE_B", names.get(BasicEnum.STATE_B.ordinal()).getString());
+    }
+
+    @Test
+    void scheduledCommandsAreLoggedById() throws IOException {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.configurePublishing("commandIds", StatePublishing.NAME);
+        machine.enableTransitionLogging(log);
+
+        var first = Commands.none().withName("first");
+        var second = Commands.none().withName("second");
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways().run(first);
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).run(second);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways();
+        machine.state(BasicEnum.STATE_B).to(BasicEnum.STATE_D).transitionAlways().run(second);
+
+        machine.poll();
+        machine.poll();
+        machine.poll();
+
+        // One entry per transition, lining up with the transitions entry
+        var commands = records("StateMachine/commandIds/commands");
+        assertEquals(3, commands.size());
+        assertArrayEquals(new long[]{0, 1}, commands.get(0).getIntegerArray());
+        assertArrayEquals(new long[0], commands.get(1).getIntegerArray());
+        assertArrayEquals(new long[]{1}, commands.get(2).getIntegerArray());
+
+        var names = records("StateMachine/commandIds/commandNames");
+        assertEquals(2, names.size());
+        assertEquals("first", names.get(0).getString());
+        assertEquals("second", names.get(1).getString());
+    }
+
+    @Test
+    void manualTransitionsHaveNoGuard() throws IOException {
+        var machine = new BasicEnumStateMachine(BasicEnum.START);
+        machine.configurePublishing("manual", StatePublishing.NAME);
+        machine.enableTransitionLogging(log);
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionWhen(() -> false);
+        CommandScheduler.getInstance().schedule(machine.transitionTo(BasicEnum.STATE_A));
+
+        var records = records("StateMachine/manual/transitions");
+        assertEquals(1, records.size());
+        assertEquals(-1, BasicEnumStateMachine.Transition.struct.unpack(buffer(records.get(0))).guard());
+    }
+
+    @Test
+    void recordStateNamesAreLoggedAsTheyAreSeen() throws IOException {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.enableTransitionLogging(log);
+
+        machine.state(BasicEnum.START).to(BasicEnum.STATE_A).transitionAlways();
+        machine.poll();
+
+        var records = records("StateMachine/" + machine.publishingName() + "/transitions");
+        assertEquals(1, records.size());
+
+        var transition = BasicRecordStateMachine.Transition.struct.unpack(buffer(records.get(0)));
+        assertEquals(0, transition.guard());
+
+        // Each name is logged once, the first time its state is seen
+        var names = records("StateMachine/" + machine.publishingName() + "/stateNames");
+        assertEquals(2, names.size());
+        assertEquals(machine.currentState().toString(), names.get(transition.to()).getString());
+        assertNotEquals(transition.from(), transition.to());
+
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.START).transitionAlways();
+        machine.poll();
+        assertEquals(2, records("StateMachine/" + machine.publishingName() + "/stateNames").size());
+    }
+
+    @Test
+    void recordRegistrationsSharingASupplierHaveTheirOwnGuard() throws IOException {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.configurePublishing("sharedSupplier", StatePublishing.NAME);
+        machine.enableTransitionLogging(log);
+
+        // Both registrations use the same lambda instance
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+        machine.state(MultiStateEnum.B).to(MultiStateEnum.C).transitionAlways();
+
+        machine.poll();
+        machine.poll();
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+
+        var records = records("StateMachine/sharedSupplier/transitions");
+        assertEquals(2, records.size());
+        assertEquals(0, BasicRecordStateMachine.Transition.struct.unpack(buffer(records.get(0))).guard());
+        assertEquals(1, BasicRecordStateMachine.Transition.struct.unpack(buffer(records.get(1))).guard());
+    }
+}
@@ -0,0 +1,106 @@
+package bot.den.foxflow.tests;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransitionPriorityTest {
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void higherPriorityGuardsWinConflicts() {
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways();
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionAlways().priority(1);
+
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_C, machine.currentState());
+    }
+
+    @Test
+    void lowerPriorityGuardsAreNotEvaluatedOnceOneFires() {
+        var evaluations = new AtomicInteger();
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return true;
+        }).priority(-1);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return true;
+        });
+
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_C, machine.currentState());
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void lowerPriorityGuardsStillFireWhenNothingAboveThemDoes() {
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways().priority(-5);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionWhen(() -> false).priority(5);
+
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_B, machine.currentState());
+    }
+
+    @Test
+    void equalPrioritiesStillConflict() {
+        var machine = new BasicEnumStateMachine(BasicEnum.STATE_A);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_B).transitionAlways().priority(2);
+        machine.state(BasicEnum.STATE_A).to(BasicEnum.STATE_C).transitionAlways().priority(2);
+
+        machine.poll();
+
+        assertEquals(BasicEnum.STATE_A, machine.currentState());
+    }
+
+    @Test
+    void recordGuardsAreCheckedByPriority() {
+        var evaluations = new AtomicInteger();
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return true;
+        });
+        machine.state(BasicEnum.START).to(MultiStateEnum.C).transitionWhen(() -> {
+            evaluations.incrementAndGet();
+            return true;
+        }).priority(10);
+
+        machine.poll();
+
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void recordTransitionAlwaysEdgesKeepTheirOwnPriority() {
+        var machine = new BasicRecordStateMachine(MultiStateEnum.A, BasicEnum.START, BasicRecord.InnerEnum.STAR);
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.B).transitionAlways();
+        machine.state(MultiStateEnum.A).to(MultiStateEnum.C).transitionAlways().priority(1);
+
+        machine.poll();
+
+        assertEquals(MultiStateEnum.C, machine.currentState().multiState());
+    }
+}
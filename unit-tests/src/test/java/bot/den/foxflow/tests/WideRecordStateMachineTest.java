@@ -0,0 +1,62 @@
+package bot.den.foxflow.tests;
+
+import bot.den.foxflow.tests.WideRecord.Left;
+import bot.den.foxflow.tests.WideRecord.Right;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WideRecordStateMachineTest {
+    private WideRecordStateMachine machine;
+
+    @BeforeEach
+    public void setup() {
+        assertTrue(HAL.initialize(500, 0));
+
+        this.machine = new WideRecordStateMachine(
+                MultiStateEnum.A,
+                BasicEnum.START,
+                Left.UP,
+                Right.UP
+        );
+    }
+
+    @AfterEach
+    public void cleanup() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    void canTransitionOnNonAdjacentFields() {
+        this.machine.state(MultiStateEnum.A, Right.UP).to(MultiStateEnum.B, Right.DOWN).transitionAlways();
+
+        this.machine.poll();
+
+        var state = this.machine.currentState();
+        assertEquals(MultiStateEnum.B, state.multiState());
+        assertEquals(BasicEnum.START, state.basic());
+        assertEquals(Left.UP, state.left());
+        assertEquals(Right.DOWN, state.right());
+    }
+
+    @Test
+    void canTransitionOnEveryField() {
+        this.machine
+                .state(MultiStateEnum.A, BasicEnum.START, Left.UP, Right.UP)
+                .to(MultiStateEnum.C, BasicEnum.STATE_A, Left.DOWN, Right.DOWN)
+                .transitionAlways();
+
+        this.machine.poll();
+
+        var state = this.machine.currentState();
+        assertEquals(MultiStateEnum.C, state.multiState());
+        assertEquals(BasicEnum.STATE_A, state.basic());
+        assertEquals(Left.DOWN, state.left());
+        assertEquals(Right.DOWN, state.right());
+    }
+}